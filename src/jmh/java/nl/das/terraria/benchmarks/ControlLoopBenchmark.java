@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.das.terraria.Util;
+import nl.das.terraria.objects.DeviceState;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Cost of the steps of the control loop and of the state and properties requests,
+ * for each of the settings files of the tests.
+ *
+ * The minute benchmarks step through the minutes of a day, one minute per invocation,
+ * so the timers and rules switch devices as they would do in a day.
+ * The terrarium temperature is too high, so the rules are activated.
+ * Tracing is off, so no files are written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlLoopBenchmark {
+
+	@Param({"settings.json", "settings_misttest.json", "settings_sprayertest.json"})
+	public String settings;
+
+	private Terrarium terrarium;
+	private LocalDateTime[] minutes;
+	private int minute;
+	private DeviceState[] deviceStates;
+
+	@Setup
+	public void setup() throws IOException {
+		Terrarium.traceFolder = "target/tracefiles";
+		String json = Files.readString(Paths.get("src/test/resources/" + this.settings));
+		this.terrarium = Terrarium.getInstance(json);
+		this.terrarium.initMockDevices();
+		this.terrarium.initDeviceState();
+		this.terrarium.initRules();
+		this.terrarium.setSensors(21, 30);
+		this.minutes = new LocalDateTime[1440];
+		for (int i = 0; i < this.minutes.length; i++) {
+			this.minutes[i] = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(i / 60, i % 60, 0));
+		}
+		this.terrarium.setNow(this.minutes[0]);
+		// The states as they are shown: off, on endlessly, on until ideal and on with an end time
+		long endtime = Util.now(this.minutes[0]) + 300;
+		this.deviceStates = new DeviceState[] {
+			new DeviceState("light1"), new DeviceState("pump"), new DeviceState("fan_in"), new DeviceState("sprayer")
+		};
+		this.deviceStates[1].setOnPeriod(-1L);
+		this.deviceStates[2].setOnPeriod(-2L);
+		this.deviceStates[3].setOnPeriod(endtime);
+	}
+
+	private void nextMinute() {
+		this.minute = (this.minute + 1) % this.minutes.length;
+		this.terrarium.setNow(this.minutes[this.minute]);
+	}
+
+	/**
+	 * One second of the control loop in which no device has to be switched off.
+	 */
+	@Benchmark
+	public void checkDevices() {
+		this.terrarium.checkDevices();
+	}
+
+	/**
+	 * One second of the control loop in which one device has to be switched off.
+	 */
+	@Benchmark
+	public void checkDevicesExpired() {
+		this.terrarium.setDeviceOn("pump", Util.now(this.terrarium.getNow()));
+		this.terrarium.checkDevices();
+	}
+
+	@Benchmark
+	public void checkTimers() {
+		nextMinute();
+		this.terrarium.checkTimers();
+	}
+
+	@Benchmark
+	public void checkRules() {
+		nextMinute();
+		this.terrarium.checkRules();
+	}
+
+	@Benchmark
+	public void checkSprayerRule() {
+		nextMinute();
+		this.terrarium.checkSprayerRule();
+	}
+
+	/**
+	 * The steps of the control loop that are done every minute.
+	 */
+	@Benchmark
+	public void minute() {
+		nextMinute();
+		this.terrarium.checkTimers();
+		this.terrarium.checkSprayerRule();
+		this.terrarium.checkRules();
+		this.terrarium.checkDevices();
+	}
+
+	@Benchmark
+	public String getState() {
+		return this.terrarium.getState();
+	}
+
+	@Benchmark
+	public String getProperties() {
+		return this.terrarium.getProperties();
+	}
+
+	@Benchmark
+	public int deviceStateToJson() {
+		int length = 0;
+		for (DeviceState s : this.deviceStates) {
+			length += s.toJson().length();
+		}
+		return length;
+	}
+}
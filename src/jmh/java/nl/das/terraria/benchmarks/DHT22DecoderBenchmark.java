@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.das.terraria.hw.DHT22Decoder;
+
+/**
+ * Cost of decoding one captured DHT22 pulse train (datasheet timings, 65.2% and 25.1 degrees),
+ * including the parity check and the conversion of both values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DHT22DecoderBenchmark {
+
+	private final long[] edges = new long[DHT22Decoder.NR_OF_EDGES];
+	private final byte[] data = new byte[5];
+
+	@Setup
+	public void setup() {
+		byte[] sent = new byte[] {0x02, (byte) 0x8C, 0x00, (byte) 0xFB, 0};
+		sent[4] = (byte) (sent[0] + sent[1] + sent[2] + sent[3]);
+		long t = 0;
+		int n = 0;
+		this.edges[n++] = t;
+		for (long us : new long[] {30, 80, 80}) {
+			t += us * 1000;
+			this.edges[n++] = t;
+		}
+		for (int i = 0; i < DHT22Decoder.NR_OF_BITS; i++) {
+			t += 50_000;
+			this.edges[n++] = t;
+			t += ((sent[i / 8] & (0x80 >> (i % 8))) != 0) ? 70_000 : 27_000;
+			this.edges[n++] = t;
+		}
+	}
+
+	@Benchmark
+	public int decode() {
+		if (DHT22Decoder.decode(this.edges, this.edges.length, this.data) && DHT22Decoder.checkParity(this.data)) {
+			return DHT22Decoder.toTenths(this.data[0], this.data[1]) + DHT22Decoder.toTenths(this.data[2], this.data[3]);
+		}
+		return Integer.MIN_VALUE;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.das.terraria.Util;
+import nl.das.terraria.objects.Action;
+import nl.das.terraria.objects.Rule;
+import nl.das.terraria.objects.Ruleset;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Cost of one evaluation of the rulesets with 2 and with 200 rulesets.
+ *
+ * legacyRules is the evaluation as it was done before the rule plan: Ruleset.active()
+ * parses the from and to times and every action compares its device by name and looks it up
+ * with a linear scan of the device list, as getDeviceIndex() did before the device registry.
+ * compiledRules is Terrarium.checkRules(), which evaluates the rule plan.
+ * The terrarium temperature is ideal, so no device is switched and only the evaluation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+
+	@Param({"2", "200"})
+	public int nrOfRulesets;
+
+	private Terrarium terrarium;
+	private int[] ruleActive;
+
+	@Setup
+	public void setup() throws IOException {
+		Terrarium.traceFolder = "target/tracefiles";
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		this.terrarium = Terrarium.getInstance(json);
+		this.terrarium.initMockDevices();
+		this.terrarium.initDeviceState();
+		this.terrarium.setNow(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(12, 0, 0)));
+		this.terrarium.setSensors(21, 26); // Ideal temperature, so rules will not be activated
+		// Copies of the rulesets from the settings, alternately active and not active
+		Ruleset[] template = this.terrarium.getRulesets();
+		Ruleset[] rulesets = new Ruleset[this.nrOfRulesets];
+		for (int i = 0; i < this.nrOfRulesets; i++) {
+			rulesets[i] = copy(template[i % template.length]);
+		}
+		this.terrarium.setRulesets(rulesets);
+		this.terrarium.initRules();
+		// No device is switched, so the rule administration does not change during the benchmark
+		this.ruleActive = new int[this.terrarium.deviceList.length];
+		for (int i = 0; i < this.ruleActive.length; i++) {
+			this.ruleActive[i] = this.terrarium.getRuleActive(this.terrarium.deviceList[i]);
+		}
+	}
+
+	@Benchmark
+	public void legacyRules() {
+		Terrarium t = this.terrarium;
+		if (!t.isSprayerRuleActive()) {
+			for (Ruleset rs : t.getRulesets()) {
+				if (rs.active(t.getNow())) {
+					for (Rule r : rs.getRules()) {
+						if ((r.getValue() < 0) && (t.getTerrariumTemperature() < -r.getValue())) {
+							for (Action a : r.getActions()) {
+								legacyExecuteAction(a);
+							}
+						} else if ((r.getValue() < 0) && (t.getTerrariumTemperature() >= rs.getIdealTemp())) {
+							for (Action a : r.getActions()) {
+								if (!a.getDevice().equalsIgnoreCase("no device") && legacyIsDeviceOn(a.getDevice()) && (legacyRuleActive(a.getDevice()) == 1)
+										&& (t.getDeviceStates()[legacyDeviceIndex(a.getDevice())].getOnPeriod() != -1L)) {
+									t.setDeviceOff(a.getDevice());
+								}
+							}
+						} else if ((r.getValue() > 0) && (t.getTerrariumTemperature() > r.getValue())) {
+							for (Action a : r.getActions()) {
+								legacyExecuteAction(a);
+							}
+						} else if ((r.getValue() > 0) && (t.getTerrariumTemperature() <= rs.getIdealTemp())) {
+							for (Action a : r.getActions()) {
+								if (!a.getDevice().equalsIgnoreCase("no device") && legacyIsDeviceOn(a.getDevice()) && (legacyRuleActive(a.getDevice()) == 1)
+										&& (t.getDeviceStates()[legacyDeviceIndex(a.getDevice())].getOnPeriod() != -1L)) {
+									t.setDeviceOff(a.getDevice());
+								}
+							}
+						}
+					}
+				} else if (rs.getActive().equalsIgnoreCase("yes")) {
+					for (Rule r : rs.getRules()) {
+						for (Action a : r.getActions()) {
+							if (!a.getDevice().equalsIgnoreCase("no device") && legacyIsDeviceOn(a.getDevice()) && (legacyRuleActive(a.getDevice()) == 1)) {
+								t.setDeviceOff(a.getDevice());
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void compiledRules() {
+		this.terrarium.checkRules();
+	}
+
+	private void legacyExecuteAction(Action a) {
+		Terrarium t = this.terrarium;
+		if (!a.getDevice().equalsIgnoreCase("no device") && ((legacyRuleActive(a.getDevice()) == 1) || t.isSprayerRuleActive())) {
+			long endtime = a.getOnPeriod() > 0 ? Util.now(t.getNow()) + a.getOnPeriod() : a.getOnPeriod();
+			if (!legacyIsDeviceOn(a.getDevice())) {
+				t.setDeviceOn(a.getDevice(), endtime);
+			}
+		}
+	}
+
+	// The lookups as they were before the device registry
+
+	private int legacyDeviceIndex(String device) {
+		String[] devices = this.terrarium.deviceList;
+		int ix = -1;
+		for (int i = 0; i < devices.length; i++) {
+			if (devices[i].equalsIgnoreCase(device)) {
+				ix = i;
+				break;
+			}
+		}
+		return ix;
+	}
+
+	private boolean legacyIsDeviceOn(String device) {
+		return this.terrarium.getDeviceStates()[legacyDeviceIndex(device)].getOnPeriod() != 0L;
+	}
+
+	private int legacyRuleActive(String device) {
+		return this.ruleActive[legacyDeviceIndex(device)];
+	}
+
+	private static Ruleset copy(Ruleset rs) {
+		Rule[] rules = new Rule[rs.getRules().length];
+		for (int r = 0; r < rules.length; r++) {
+			Action[] actions = new Action[rs.getRules()[r].getActions().length];
+			for (int a = 0; a < actions.length; a++) {
+				Action action = rs.getRules()[r].getActions()[a];
+				actions[a] = new Action(action.getDevice(), action.getOnPeriod());
+			}
+			rules[r] = new Rule(rs.getRules()[r].getValue(), actions);
+		}
+		return new Ruleset(rs.getTerrarium(), rs.getActive(), rs.getFrom(), rs.getTo(), rs.getIdealTemp(), rules);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires second, minute and hour ticks aligned to the wall-clock boundaries.
+ *
+ * All handlers run on one scheduler thread. On every tick the SECOND handlers
+ * are called first, then the MINUTE handlers (when a minute has passed) and
+ * then the HOUR handlers (when an hour has passed), each in registration order.
+ * Between ticks the thread sleeps, so no CPU is used while idle.
+ *
+ * In tickless mode the scheduler does not wake up every second, but asks the
+ * DeadlineProvider when the next thing has to be done and sleeps until then,
+ * or until wakeUp() is called because something was changed from outside.
+ * The SECOND handlers then run on every wake-up instead of every second.
+ *
+ * The wake-up handler runs on every wake-up before the tick handlers, also when
+ * it is still the same second and no tick handler is called.
+ */
+public class Scheduler {
+
+	public enum Tick { SECOND, MINUTE, HOUR }
+
+	public interface TickHandler {
+		void tick(LocalDateTime now);
+	}
+
+	public interface DeadlineProvider {
+		/**
+		 * @return the next moment something has to be done in Epoch-seconds
+		 */
+		long nextDeadline(LocalDateTime now);
+	}
+
+	private Map<Tick, List<TickHandler>> handlers = new EnumMap<>(Tick.class);
+	private ScheduledExecutorService executor;
+	private ScheduledFuture<?> pending;
+	private Thread thread;
+	private DeadlineProvider deadlines;
+	private TickHandler wakeUpHandler = t -> { };
+	private Runnable afterTickHandler = () -> { };
+	private boolean woken;
+	private long currentSec;
+	private long currentMin;
+	private long currentHour;
+
+	public Scheduler(LocalDateTime start) {
+		for (Tick t : Tick.values()) {
+			this.handlers.put(t, new ArrayList<>());
+		}
+		this.currentSec = Util.now(start);
+		this.currentMin = this.currentSec / 60;
+		this.currentHour = this.currentSec / 3600;
+	}
+
+	public void register(Tick tick, TickHandler handler) {
+		this.handlers.get(tick).add(handler);
+	}
+
+	/**
+	 * @param handler is run on every wake-up before the tick handlers
+	 */
+	public void setWakeUpHandler(TickHandler handler) {
+		this.wakeUpHandler = handler;
+	}
+
+	/**
+	 * @param handler is run on every wake-up after the tick handlers
+	 */
+	public void setAfterTickHandler(Runnable handler) {
+		this.afterTickHandler = handler;
+	}
+
+	/**
+	 * Switch to tickless mode.
+	 */
+	public void setTickless(DeadlineProvider provider) {
+		this.deadlines = provider;
+	}
+
+	public void start() {
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			this.thread = new Thread(r, "scheduler");
+			return this.thread;
+		});
+		scheduleNext(LocalDateTime.now());
+	}
+
+	public void stop() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Run the handlers as soon as possible instead of waiting for the next deadline or second.
+	 * Only needed when called from another thread, since after running the handlers
+	 * the scheduler determines the next deadline anyway.
+	 */
+	public synchronized void wakeUp() {
+		if ((this.executor != null) && (Thread.currentThread() != this.thread)) {
+			this.woken = true;
+			schedule(0);
+		}
+	}
+
+	private synchronized void scheduleNext(LocalDateTime now) {
+		long millis = System.currentTimeMillis();
+		// Wake up just after the next whole second
+		long delay = 1000 - (millis % 1000);
+		if (this.woken) {
+			delay = 0;
+		} else if (this.deadlines != null) {
+			long deadline = this.deadlines.nextDeadline(now) * 1000L;
+			delay = Math.max(delay, deadline - millis);
+		}
+		schedule(delay);
+	}
+
+	private void schedule(long delay) {
+		if (this.pending != null) {
+			this.pending.cancel(false);
+		}
+		this.pending = this.executor.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void tick() {
+		LocalDateTime now = LocalDateTime.now().withNano(0);
+		synchronized (this) {
+			this.woken = false;
+		}
+		try {
+			try {
+				this.wakeUpHandler.tick(now);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			// The executor runs on a monotonic clock, so after a wall-clock adjustment
+			// it can wake up too early. In that case just wait for the next second.
+			if (Util.now(now) != this.currentSec) {
+				this.currentSec = Util.now(now);
+				fire(Tick.SECOND, now);
+				// Compare absolute minutes and hours, since in tickless mode
+				// the scheduler can sleep for a whole hour or day
+				if ((this.currentSec / 60) != this.currentMin) {
+					this.currentMin = this.currentSec / 60;
+					fire(Tick.MINUTE, now);
+				}
+				if ((this.currentSec / 3600) != this.currentHour) {
+					this.currentHour = this.currentSec / 3600;
+					fire(Tick.HOUR, now);
+				}
+			}
+			try {
+				this.afterTickHandler.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		} finally {
+			if (!this.executor.isShutdown()) {
+				scheduleNext(now);
+			}
+		}
+	}
+
+	private void fire(Tick tick, LocalDateTime now) {
+		for (TickHandler h : this.handlers.get(tick)) {
+			try {
+				h.tick(now);
+			} catch (RuntimeException e) {
+				// A failing handler may not stop the other handlers nor the scheduler
+				e.printStackTrace();
+			}
+		}
+	}
+}
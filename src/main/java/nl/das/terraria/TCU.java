@@ -17,9 +17,11 @@ import java.time.format.DateTimeFormatter;
 
 import com.pi4j.system.NetworkInfo;
 
+import nl.das.terraria.Scheduler.Tick;
 import nl.das.terraria.hw.LCD;
 import nl.das.terraria.objects.Terrarium;
 import nl.das.terraria.rest.RestServer;
+import nl.das.terraria.trace.Compactor;
 
 public class TCU {
 
@@ -58,6 +60,8 @@ public class TCU {
 		terrarium.initDevices();
 		// Initialize device state
 		terrarium.initDeviceState();
+		// Retrieve the statistics from disk
+		terrarium.loadRollups();
 		// Retrieve the lifecycle values from disk
 		try {
 			String json = new String(Files.readAllBytes(Paths.get("lifecycle.txt")));
@@ -76,6 +80,7 @@ public class TCU {
 		}
 		// Initialize the Temperature sensors
 		terrarium.initSensors();
+		terrarium.startSensorAcquisition();
 		int tterr = terrarium.getTerrariumTemperature();
 		int troom =  terrarium.getRoomTemperature();
 		lcd.displayLine1(troom, tterr);
@@ -93,54 +98,59 @@ public class TCU {
 		// Check timers if devices should be on
 		terrarium.initTimers(now);
 		terrarium.initRules();
-		// Get the current datetime
-		int currentSec = now.getSecond();
-		int currentMin = now.getMinute();
-		int currentHour = now.getHour();
-		// Start the loop
-		System.out.println(now.format(dtfmt) + " Initialization done, start loop");
-		while (true) {
-			now = LocalDateTime.now();
-			terrarium.setNow(now);
-			if (now.getSecond() != currentSec) {
-				currentSec = now.getSecond();
-				// A second has passed
-				// Each second check devices
-				terrarium.checkDevices();
-				if (now.getMinute() != currentMin) {
-					currentMin = now.getMinute();
-					// A minute has passed
-//					System.out.println(now.format(dtfmt) + " A minute has passed");
-					// Each minute
-					// - display temperature on LCD line 1
-					terrarium.readSensorValues();
-					tterr = terrarium.getTerrariumTemperature();
-					troom = terrarium.getRoomTemperature();
-					lcd.displayLine1(troom, tterr);
-					Util.traceTemperature(Terrarium.traceFolder + "/" +  Terrarium.traceTempFilename, now, "r=%d t=%d", troom, tterr);
-					// - check timers
-					terrarium.checkTimers();
-					// - check sprayerrule
-					terrarium.checkSprayerRule();
-					// - check rulesets
-					terrarium.checkRules();
-					// Check if tracing should be switched off (max 1 day)
-					terrarium.checkTrace();
-				}
-				if (now.getHour() != currentHour) {
-					// An hour has passed
-//					System.out.println(now.format(dtfmt) + " An hour has passed");
-					currentHour = now.getHour();
-					if (!terrarium.isTraceOn()) {
-						// Start trace on the whole hour
-						terrarium.setTrace(true);
-					}
-					// Each hour
-					// - decrement lifecycle value
-					terrarium.decreaseLifetime(1);
-					terrarium.saveLifecycleCounters();
-				}
-			}
+		// Compact the old temperature history in the background
+		if (Terrarium.compactHistory) {
+			new Compactor(Terrarium.traceFolder, Terrarium.maxNrOfTraceDays).start();
 		}
+		// Register the periodic tasks
+		final Terrarium terr = terrarium;
+		Scheduler scheduler = new Scheduler(now);
+		// Each second (or in tickless mode, on each wake-up) check devices
+		scheduler.register(Tick.SECOND, t -> {
+			terr.setNow(t);
+			terr.checkDevices();
+		});
+		// Each minute
+		scheduler.register(Tick.MINUTE, t -> {
+			// - display temperature on LCD line 1
+			terr.readSensorValues();
+			int tt = terr.getTerrariumTemperature();
+			int tr = terr.getRoomTemperature();
+			lcd.displayLine1(tr, tt);
+			Util.traceTemperatures(Terrarium.traceFolder + "/" +  Terrarium.traceTempFilename, t, terr.getRoomTenths(), terr.getTerrariumTenths(),
+					terr.getRoomHumidityTenths());
+			// - check timers
+			terr.checkTimers();
+			// - check sprayerrule
+			terr.checkSprayerRule();
+			// - check rulesets
+			terr.checkRules();
+			// Check if tracing should be switched off (max 1 day)
+			terr.checkTrace();
+		});
+		// Each hour
+		scheduler.register(Tick.HOUR, t -> {
+			if (!terr.isTraceOn()) {
+				// Start trace on the whole hour
+				terr.setTrace(true);
+			}
+			// - decrement lifecycle value
+			terr.decreaseLifetime(1);
+			terr.saveLifecycleCounters();
+			// - save the statistics
+			terr.saveRollups();
+		});
+		// Only wake up when there is something to do, or when something is changed through the REST interface
+		scheduler.setTickless(terr::getNextDeadline);
+		// The changes through the REST interface are executed by the scheduler thread,
+		// at the time of the wake-up and not of the previous tick
+		scheduler.setWakeUpHandler(terr::executeCommands);
+		// and the REST interface reads the state that is published at the end of each tick
+		scheduler.setAfterTickHandler(terr::publish);
+		Terrarium.setWakeUpListener(scheduler::wakeUp);
+		Terrarium.getCommands().start();
+		// Start the loop. The scheduler thread keeps the application running.
+		System.out.println(now.format(dtfmt) + " Initialization done, start loop");
+		scheduler.start();
 	}
 }
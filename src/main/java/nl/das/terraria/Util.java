@@ -15,7 +15,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -23,19 +22,21 @@ import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.TreeSet;
 
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.trace.BinaryTrace;
+import nl.das.terraria.trace.TraceWriter;
 
 /**
  *
  */
 public class Util {
 
-	static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 	static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+	static DateTimeFormatter tmfmt = DateTimeFormatter.ofPattern("HH:mm:ss");
 
 
 	public static String cvtPeriodToString(long l) {
@@ -64,90 +65,139 @@ public class Util {
 		return LocalDateTime.ofEpochSecond(epochseconds, 0, ZoneId.systemDefault().getRules().getOffset(Instant.now()));
 	}
 
+	/**
+	 * @return the sorted names of the tracefiles, without the extension of the binary format.
+	 *         A tracefile that is written in both formats is listed once.
+	 */
 	public static List<String> listTraceFiles(String folder, String prefix) throws IOException {
-	    List<String> fileList = new ArrayList<>();
+	    Set<String> fileList = new TreeSet<>();
 	    Files.walkFileTree(Paths.get(folder), new SimpleFileVisitor<Path>() {
 	        @Override
 	        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-	            if (!Files.isDirectory(file) && file.getFileName().toString().startsWith(prefix)) {
-	                fileList.add(file.getFileName().toString());
+	            String name = file.getFileName().toString();
+	            if (!Files.isDirectory(file) && name.startsWith(prefix)) {
+	                if (name.endsWith(BinaryTrace.EXTENSION)) {
+	                    fileList.add(name.substring(0, name.length() - BinaryTrace.EXTENSION.length()));
+	                } else if (name.indexOf('.') == -1) {
+	                    fileList.add(name);
+	                }
 	            }
 	            return FileVisitResult.CONTINUE;
 	        }
 	    });
-	    Collections.sort(fileList);
-	    return fileList;
+	    return new ArrayList<>(fileList);
 	}
 
+	/**
+	 * Start a new state tracefile for the day of now.
+	 * The file is created and the oldest files are removed by the trace writer, so this never waits.
+	 *
+	 * @return the name of the new tracefile
+	 */
 	public static String createStateTraceFile(String dir, LocalDateTime now) {
-		// Count the number of tracefiles.
-		// If > Terrarium.maxNrOfTraceDays delete oldest first
-		// If file exists, delete it first
-		try {
-			List<String> files = listTraceFiles(dir, "state_");
-			if (files.size() == Terrarium.maxNrOfTraceDays) {
-				Files.deleteIfExists(Paths.get(dir + "/" + files.get(0)));
-			}
-			Path p = Paths.get(dir + "/state_" + now.format(tffmt));
-			Files.deleteIfExists(p);
-			Files.createFile(p);
-			TimeUnit.SECONDS.sleep(1);
-			return p.getFileName().toString();
-		} catch (IOException | InterruptedException e) {
-			e.printStackTrace();
-			return "";
-		}
+		return createTraceFile(dir, "state_", now);
 	}
 
+	/**
+	 * Start a new temperature tracefile for the day of now.
+	 * The file is created and the oldest files are removed by the trace writer, so this never waits.
+	 *
+	 * @return the name of the new tracefile
+	 */
 	public static String createTemperatureTraceFile(String dir, LocalDateTime now) {
-		// Count the number of tracefiles.
-		// If > Terrarium.maxNrOfTraceDays delete oldest first
-		// If file exists, delete it first
-		try {
-			List<String> files = listTraceFiles(dir, "temp_");
-			if (files.size() == Terrarium.maxNrOfTraceDays) {
-				Files.deleteIfExists(Paths.get(dir + "/" + files.get(0)));
-			}
-			Path p = Paths.get(dir + "/temp_" + now.format(tffmt));
-			Files.deleteIfExists(p);
-			Files.createFile(p);
-			TimeUnit.SECONDS.sleep(1);
-			return p.getFileName().toString();
-		} catch (IOException | InterruptedException e) {
-			e.printStackTrace();
-			return "";
+		return createTraceFile(dir, "temp_", now);
+	}
+
+	private static String createTraceFile(String dir, String prefix, LocalDateTime now) {
+		String day = now.format(tffmt);
+		List<String> extensions = new ArrayList<>();
+		if (Terrarium.traceText) {
+			extensions.add("");
+		}
+		if (Terrarium.traceBinary) {
+			extensions.add(BinaryTrace.EXTENSION);
 		}
+		// The old temperature tracefiles are removed by the compactor after they are compacted
+		int maxNrOfFiles = (prefix.equals("temp_") && Terrarium.compactHistory) ? Integer.MAX_VALUE : Terrarium.maxNrOfTraceDays;
+		TraceWriter.getInstance().rollOver(dir, prefix, day, now.plusDays(1).format(tffmt), maxNrOfFiles, extensions.toArray(new String[0]));
+		return prefix + day;
 	}
 
+	/**
+	 * The line is written by the trace writer, so this never waits for the file.
+	 */
 	public static void traceState(String tracefile, LocalDateTime now, String fmt, Object ...args) {
-		try {
-			if (Terrarium.getInstance().isTraceOn()) {
-				String nowstr = now.format(dtfmt);
-				String format = nowstr + " " + fmt;
-				Files.writeString(
-						Paths.get(tracefile),
-						String.format(format + "\n", args),
-						StandardOpenOption.APPEND
-				);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (Terrarium.traceText && Terrarium.getInstance().isTraceOn()) {
+			TraceWriter.getInstance().write(tracefile, now, fmt, args);
 		}
 	}
 
+	/**
+	 * The line is written by the trace writer, so this never waits for the file.
+	 */
 	public static void traceTemperature(String tracefile, LocalDateTime now, String fmt, Object ...args) {
-		try {
-			if (Terrarium.getInstance().isTraceOn()) {
-				String nowstr = now.format(dtfmt);
-				String format = nowstr + " " + fmt;
-				Files.writeString(
-						Paths.get(tracefile),
-						String.format(format + "\n", args),
-						StandardOpenOption.APPEND
-				);
+		if (Terrarium.traceText && Terrarium.getInstance().isTraceOn()) {
+			TraceWriter.getInstance().write(tracefile, now, fmt, args);
+		}
+	}
+
+	/**
+	 * Trace the start or the end of a trace in the state or temperature tracefile.
+	 */
+	public static void traceStartStop(String tracefile, LocalDateTime now, boolean start) {
+		if (Terrarium.getInstance().isTraceOn()) {
+			if (Terrarium.traceText) {
+				TraceWriter.getInstance().write(tracefile, now, start ? "start" : "stop");
+			}
+			if (Terrarium.traceBinary) {
+				TraceWriter.getInstance().writeRecord(tracefile + BinaryTrace.EXTENSION,
+						BinaryTrace.markerRecord(now(now), start ? BinaryTrace.TYPE_START : BinaryTrace.TYPE_STOP));
+			}
+		}
+	}
+
+	/**
+	 * Trace the state of a device in the state tracefile.
+	 *
+	 * @param device  index of the device in the device list
+	 * @param endtime in Epoch-seconds, -1 or -2, or 0 when the end time is not traced
+	 */
+	public static void traceDevice(String tracefile, LocalDateTime now, int device, String name, boolean on, long endtime) {
+		if (Terrarium.getInstance().isTraceOn()) {
+			if (Terrarium.traceText) {
+				if (!on) {
+					TraceWriter.getInstance().write(tracefile, now, "%s 0", name);
+				} else if (endtime == 0) {
+					TraceWriter.getInstance().write(tracefile, now, "%s 1", name);
+				} else if (endtime > 0) {
+					TraceWriter.getInstance().write(tracefile, now, "%s 1 %s", name, Util.ofEpochSecond(endtime).format(tmfmt));
+				} else {
+					TraceWriter.getInstance().write(tracefile, now, "%s 1 %d", name, endtime);
+				}
+			}
+			if (Terrarium.traceBinary) {
+				TraceWriter.getInstance().writeRecord(tracefile + BinaryTrace.EXTENSION, BinaryTrace.stateRecord(now(now), device, on, endtime));
+			}
+		}
+	}
+
+	/**
+	 * Trace the temperatures in the temperature tracefile.
+	 * The text format has whole degrees, the humidity is only traced in the binary format.
+	 *
+	 * @param room      in tenths of degrees
+	 * @param terrarium in tenths of degrees
+	 * @param humidity  in tenths of percents, or -1 if not known
+	 */
+	public static void traceTemperatures(String tracefile, LocalDateTime now, int room, int terrarium, int humidity) {
+		if (Terrarium.getInstance().isTraceOn()) {
+			if (Terrarium.traceText) {
+				TraceWriter.getInstance().write(tracefile, now, "r=%d t=%d", Math.round(room / 10.0f), Math.round(terrarium / 10.0f));
+			}
+			if (Terrarium.traceBinary) {
+				TraceWriter.getInstance().writeRecord(tracefile + BinaryTrace.EXTENSION,
+						BinaryTrace.temperatureRecord(now(now), room, terrarium, humidity < 0 ? BinaryTrace.NO_VALUE : humidity));
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
 	}
 }
@@ -8,18 +8,17 @@
 
 package nl.das.terraria.hw;
 
-import java.io.Closeable;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Objects;
-import java.util.concurrent.Callable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.pi4j.io.gpio.Pin;
 import com.pi4j.wiringpi.Gpio;
@@ -28,6 +27,11 @@ import com.pi4j.wiringpi.Gpio;
  * Implements the DHT22 / AM2302 reading in Java using Pi4J.
  *
  * See sensor specification sheet for details.
+ *
+ * The pulse train of the sensor is captured by one long-lived reader thread with the highest priority.
+ * A read is requested with requestData(); the capture stops at its deadline, so a sensor that
+ * does not respond never leaves a thread spinning. The capture only records the times of the
+ * level changes, the bits are decoded afterwards by DHT22Decoder.
  */
 public class DHT22 {
 
@@ -35,14 +39,14 @@ public class DHT22 {
 	 * Name of the sensor.
 	 */
 	private String name = "MyDHT22";
-	/**
-	 * Time in nanoseconds to separate ZERO and ONE signals.
-	 */
-	private static final int LONGEST_ZERO = 50000;
 	/**
 	 * Minimum time in milliseconds to wait between reads of sensor.
 	 */
 	public static final int MIN_MILLISECS_BETWEEN_READS = 2500;
+	/**
+	 * Maximum time in milliseconds of a capture of the pulse train.
+	 */
+	public static final int READ_TIMEOUT_MILLIS = 500;
 	/**
 	 * PI4J Pin number.
 	 */
@@ -63,6 +67,21 @@ public class DHT22 {
 	 * Last read attempt
 	 */
 	private Long lastRead = null;
+	/**
+	 * Buffers of the reader thread, reused for each capture.
+	 */
+	private final byte[] buffer = new byte[5];
+	private final long[] edges = new long[DHT22Decoder.NR_OF_EDGES];
+	private int nrOfEdges = 0;
+	private final BlockingQueue<CompletableFuture<byte[]>> requests = new LinkedBlockingQueue<>();
+	private Thread reader;
+	/*
+	 * Statistics
+	 */
+	private final AtomicLong reads = new AtomicLong();
+	private final AtomicLong parityFailures = new AtomicLong();
+	private final AtomicLong outOfRange = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
 	/**
 	 * Constructor with pin used for signal. See PI4J and WiringPI for pin numbering systems.....
 	 *
@@ -80,27 +99,107 @@ public class DHT22 {
 	/**
 	 * Communicate with sensor to get new reading data.
 	 *
-	 * @throws ExecutionException
-	 * @throws InterruptedException
-	 * @throws Exception            if failed to successfully read data.
+	 * @throws IOException if failed to successfully read data.
 	 */
 	private void getData () throws IOException {
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		ReadSensorFuture readSensor = new ReadSensorFuture();
-		Future<byte[]> future = executor.submit(readSensor);
-		// Reset data
-		this.data = new byte[5];
+		this.reads.incrementAndGet();
+		CompletableFuture<byte[]> future = requestData();
 		try {
-			this.data = future.get(2, TimeUnit.SECONDS);
-			readSensor.close();
-		} catch (Exception e) {
-			readSensor.close();
-			future.cancel(true);
-			executor.shutdown();
+			this.data = future.get(READ_TIMEOUT_MILLIS + 100, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			this.timeouts.incrementAndGet();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) {
+				this.timeouts.incrementAndGet();
+			}
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new IOException(e);
 		}
-		readSensor.close();
-		executor.shutdown();
+	}
+
+	/**
+	 * Request a capture of the 40 bits of the sensor by the reader thread.
+	 * The future completes with the buffer of the reader thread, which is valid until the next request,
+	 * or with a TimeoutException if the sensor did not respond in time.
+	 */
+	public CompletableFuture<byte[]> requestData () {
+		startReader();
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		this.requests.add(future);
+		return future;
+	}
+
+	private synchronized void startReader () {
+		if (this.reader == null) {
+			this.reader = new Thread(this::runReader, "dht22-reader");
+			this.reader.setDaemon(true);
+			this.reader.setPriority(Thread.MAX_PRIORITY);
+			this.reader.start();
+		}
+	}
+
+	private void runReader () {
+		try {
+			while (true) {
+				CompletableFuture<byte[]> future = this.requests.take();
+				if (future.isDone()) {
+					// Cancelled
+					continue;
+				}
+				try {
+					this.nrOfEdges = capture(this.edges);
+					if (DHT22Decoder.decode(this.edges, this.nrOfEdges, this.buffer)) {
+						future.complete(this.buffer);
+					} else {
+						future.completeExceptionally(new TimeoutException("No response of " + this.name));
+					}
+				} catch (RuntimeException e) {
+					future.completeExceptionally(e);
+				} finally {
+					// Set pin high for end of transmission.
+					Gpio.pinMode(this.pinNumber, Gpio.OUTPUT);
+					Gpio.digitalWrite(this.pinNumber, Gpio.HIGH);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * Record the time of each level change of the pin after the start signal in edges, see DHT22Decoder.
+	 *
+	 * @return the number of edges, less than DHT22Decoder.NR_OF_EDGES if the deadline passed
+	 */
+	private int capture (long[] edges) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MILLIS);
+		sendStartSignal();
+		Gpio.pinMode(this.pinNumber, Gpio.INPUT);
+		int n = 0;
+		int level = Gpio.HIGH;
+		edges[n++] = System.nanoTime();
+		while (n < edges.length) {
+			int l = Gpio.digitalRead(this.pinNumber);
+			long t = System.nanoTime();
+			if (l != level) {
+				edges[n++] = t;
+				level = l;
+			} else if (t > deadline) {
+				break;
+			}
+		}
+		return n;
+	}
+
+	private void sendStartSignal () {
+		Gpio.pinMode(this.pinNumber, Gpio.OUTPUT);
+		Gpio.digitalWrite(this.pinNumber, Gpio.LOW);
+		Gpio.delay(10);
+		Gpio.digitalWrite(this.pinNumber, Gpio.HIGH);
 	}
 
 	public boolean doReadLoop () throws InterruptedException, IOException {
@@ -149,13 +248,18 @@ public class DHT22 {
 	 * @throws ParityCheckException
 	 * @throws IOException
 	 */
-	public boolean read (boolean checkParity)
+	public synchronized boolean read (boolean checkParity)
 			throws ValueOutOfOperatingRangeException, ParityCheckException, IOException {
 		checkLastReadDelay();
 		this.lastRead = System.currentTimeMillis();
 		getData();
 		if (checkParity) {
-			checkParity();
+			try {
+				checkParity();
+			} catch (ParityCheckException e) {
+				this.parityFailures.incrementAndGet();
+				throw e;
+			}
 		}
 
 		// Operating Ranges from specification sheet.
@@ -163,11 +267,13 @@ public class DHT22 {
 		// temperature -40~80
 		double newHumidityValue = getReadingValueFromBytes(this.data[0], this.data[1]);
 		if ((newHumidityValue < 0) || (newHumidityValue > 100)) {
+			this.outOfRange.incrementAndGet();
 			throw new ValueOutOfOperatingRangeException();
 		}
 		this.humidity = newHumidityValue;
 		double newTemperatureValue = getReadingValueFromBytes(this.data[2], this.data[3]);
 		if ((newTemperatureValue < -40) || (newTemperatureValue >= 85)) {
+			this.outOfRange.incrementAndGet();
 			throw new ValueOutOfOperatingRangeException();
 		}
 		this.temperature = newTemperatureValue;
@@ -184,27 +290,22 @@ public class DHT22 {
 	}
 
 	protected static double getReadingValueFromBytes (final byte hi, final byte low) {
-		ByteBuffer bb = ByteBuffer.allocate(2);
-		bb.order(ByteOrder.BIG_ENDIAN);
-		bb.put(hi);
-		bb.put(low);
-		short shortVal = bb.getShort(0);
-		double doubleValue = ((double) shortVal) / 10;
-
-		// When highest bit of temperature is 1, it means the temperature is below 0 degree Celsius.
-		if (1 == ((hi >> 7) & 1)) {
-			doubleValue = (doubleValue + 3276.8) * -1d;
-		}
-
-		return doubleValue;
+		return DHT22Decoder.toTenths(hi, low) / 10.0;
 	}
 
 	private void checkParity () throws ParityCheckException {
-		if (!(this.data[4] == (this.data[0] + this.data[1] + this.data[2] + this.data[3]))) {
+		if (!DHT22Decoder.checkParity(this.data)) {
 			throw new ParityCheckException();
 		}
 	}
 
+	/**
+	 * @return the edges of the last capture, see DHT22Decoder. To record waveforms for the replay tests.
+	 */
+	public synchronized long[] getLastCapture () {
+		return Arrays.copyOf(this.edges, this.nrOfEdges);
+	}
+
 	public Double getHumidity () {
 		return this.humidity;
 	}
@@ -213,73 +314,6 @@ public class DHT22 {
 		return this.temperature;
 	}
 
-	/**
-	 * Callable Future for reading sensor. Allows timeout if it gets stuck.
-	 */
-	private class ReadSensorFuture implements Callable<byte[]>, Closeable {
-
-		private boolean keepRunning = true;
-
-		public ReadSensorFuture() {
-			Gpio.pinMode(DHT22.this.pinNumber, Gpio.OUTPUT);
-			Gpio.digitalWrite(DHT22.this.pinNumber, Gpio.HIGH);
-		}
-
-		@Override
-		public byte[] call () throws Exception {
-			// do expensive (slow) stuff before we start and privoritize thread.
-			byte[] data = new byte[5];
-			long startTime = System.nanoTime();
-			Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
-			sendStartSignal();
-			waitForResponseSignal();
-			for (int i = 0; i < 40; i++) {
-				while (this.keepRunning && (Gpio.digitalRead(DHT22.this.pinNumber) == Gpio.LOW)) {
-				}
-				startTime = System.nanoTime();
-				while (this.keepRunning && (Gpio.digitalRead(DHT22.this.pinNumber) == Gpio.HIGH)) {
-				}
-				long timeHight = System.nanoTime() - startTime;
-				data[i / 8] <<= 1;
-				if (timeHight > LONGEST_ZERO) {
-					data[i / 8] |= 1;
-				}
-			}
-			Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
-			return data;
-		}
-
-		private void sendStartSignal () {
-			// Send start signal.
-			Gpio.pinMode(DHT22.this.pinNumber, Gpio.OUTPUT);
-			Gpio.digitalWrite(DHT22.this.pinNumber, Gpio.LOW);
-			Gpio.delay(10);
-			Gpio.digitalWrite(DHT22.this.pinNumber, Gpio.HIGH);
-		}
-
-		/**
-		 * AM2302 will pull low 80us as response signal, then AM2302 pulls up 80us for preparation to send data.
-		 */
-		private void waitForResponseSignal () {
-			Gpio.pinMode(DHT22.this.pinNumber, Gpio.INPUT);
-			while (this.keepRunning && (Gpio.digitalRead(DHT22.this.pinNumber) == Gpio.HIGH)) {
-			}
-			while (this.keepRunning && (Gpio.digitalRead(DHT22.this.pinNumber) == Gpio.LOW)) {
-			}
-			while (this.keepRunning && (Gpio.digitalRead(DHT22.this.pinNumber) == Gpio.HIGH)) {
-			}
-		}
-
-		@Override
-		public void close () throws IOException {
-			this.keepRunning = false;
-
-			// Set pin high for end of transmission.
-			Gpio.pinMode(DHT22.this.pinNumber, Gpio.OUTPUT);
-			Gpio.digitalWrite(DHT22.this.pinNumber, Gpio.HIGH);
-		}
-	}
-
 	public class ParityCheckException extends IOException {
 		private static final long serialVersionUID = 1L;
 	}
@@ -291,4 +325,20 @@ public class DHT22 {
 	public String getName () {
 		return this.name;
 	}
+
+	public long getNrOfReads () {
+		return this.reads.get();
+	}
+
+	public long getNrOfParityFailures () {
+		return this.parityFailures.get();
+	}
+
+	public long getNrOfOutOfRange () {
+		return this.outOfRange.get();
+	}
+
+	public long getNrOfTimeouts () {
+		return this.timeouts.get();
+	}
 }
\ No newline at end of file
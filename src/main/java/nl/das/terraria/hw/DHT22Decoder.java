@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.hw;
+
+/**
+ * Decodes a captured DHT22 pulse train. It does not use the hardware and does not allocate.
+ *
+ * The capture holds the time (in nanoseconds) of the release of the pin by the host in edges[0]
+ * and the time of each following level change. The line is high after the release, so the
+ * interval edges[k] - edges[k + 1] is high when k is even and low when k is odd:
+ *
+ * e0-e1 host release (high), e1-e2 response (low, 80us), e2-e3 preparation (high, 80us),
+ * then for bit i (MSB first): e(3+2i)-e(4+2i) low (50us), e(4+2i)-e(5+2i) high (26-28us for 0, 70us for 1).
+ *
+ * The threshold between a 0 and a 1 is taken from the capture itself: the average of the 40 low pulses.
+ * So the decoding does not depend on a fixed timing that is off on a busy or throttled Pi, and
+ * it also works when all bits are equal.
+ */
+public class DHT22Decoder {
+
+	public static final int NR_OF_BITS = 40;
+	public static final int NR_OF_EDGES = 3 + (2 * NR_OF_BITS) + 1;
+
+	private DHT22Decoder() { }
+
+	/**
+	 * @param edges the capture
+	 * @param n     the number of edges in the capture
+	 * @param data  the 5 bytes that are decoded (2 humidity, 2 temperature, 1 parity)
+	 * @return false if the capture is incomplete
+	 */
+	public static boolean decode(long[] edges, int n, byte[] data) {
+		if (n < NR_OF_EDGES) {
+			return false;
+		}
+		long sumLow = 0;
+		for (int i = 0; i < NR_OF_BITS; i++) {
+			sumLow += edges[4 + (2 * i)] - edges[3 + (2 * i)];
+		}
+		// The low pulse (50us) is about halfway between a 0 (26-28us) and a 1 (70us)
+		long threshold = sumLow / NR_OF_BITS;
+		for (int i = 0; i < NR_OF_BITS; i++) {
+			int b = i / 8;
+			data[b] <<= 1;
+			if ((edges[5 + (2 * i)] - edges[4 + (2 * i)]) > threshold) {
+				data[b] |= 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the parity byte is the sum of the 4 data bytes
+	 */
+	public static boolean checkParity(byte[] data) {
+		return data[4] == (byte) (data[0] + data[1] + data[2] + data[3]);
+	}
+
+	/**
+	 * @return the value of the 2 bytes in tenths. The highest bit is the sign (not 2's complement).
+	 */
+	public static int toTenths(byte hi, byte lo) {
+		int value = ((hi & 0x7F) << 8) | (lo & 0xFF);
+		return (hi & 0x80) == 0 ? value : -value;
+	}
+}
@@ -8,36 +8,245 @@
 
 package nl.das.terraria.hw;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.pi4j.component.temperature.TemperatureSensor;
+import com.pi4j.component.temperature.impl.TmpDS18B20DeviceType;
+import com.pi4j.io.w1.W1Device;
 import com.pi4j.io.w1.W1Master;
-import com.pi4j.temperature.TemperatureScale;
 
 /**
  * In order to work add this line to the /boot/firmware/usercfg.txt:
  *    device_tree_overlay=overlays/w1-gpio.dtbo
+ *
+ * The DS18B20 probes on the w1 bus are discovered once, and again only when a read fails or no probe was found.
+ * A probe that is not on the bus anymore is dropped and its thread is stopped.
+ * A read of a probe starts a conversion that takes about 750 ms. Once started, each probe is read
+ * by its own thread every intervalMillis, so several probes are converted in parallel and getTemperature()
+ * returns the latest value without waiting. When not started (e.g. in the tests) the probes are read on the thread of the caller.
+ *
+ * The w1 devices folder is devicesPath, so the tests can use a folder with fake probes.
  */
 public class DS18B20 {
 
+	public static String devicesPath = "/sys/bus/w1/devices";
+	public static long intervalMillis = 5000;
+	/**
+	 * A value that is older is not returned anymore.
+	 */
+	public static long maxAgeMillis = 60000;
+	/**
+	 * The temperature of a probe that did not convert yet.
+	 */
+	private static final int POWER_ON_VALUE = 85000;
+
 	private W1Master w1Master;
+	private final Map<String, Probe> probes = new TreeMap<>(); // Guarded by this
+	private long lastDiscovery = 0; // Guarded by this
+	private boolean started = false; // Guarded by this
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong discoveries = new AtomicLong();
 
 	public DS18B20(W1Master w1Master) {
 		this.w1Master = w1Master;
 	}
 
-	public double getTemperature () {
+	/**
+	 * Start reading the probes in the background.
+	 */
+	public synchronized void start() {
+		if (!this.started) {
+			this.started = true;
+			discover();
+			for (Probe p : this.probes.values()) {
+				p.start();
+			}
+		}
+	}
 
-		// There is only 1 DS18B20 Temperature sensor on the w1 wire
-		List<TemperatureSensor> devices = this.w1Master.getDevices(TemperatureSensor.class);
-		if (devices.size() > 0) {
-			for (TemperatureSensor d : devices) {
-				if (d.getName().startsWith("28-")) {
-					return d.getTemperature(TemperatureScale.CELSIUS);
+	/**
+	 * Look for the probes on the w1 bus. New probes are started when this is started,
+	 * the probes that are gone are stopped.
+	 */
+	private synchronized void discover() {
+		this.lastDiscovery = System.currentTimeMillis();
+		if (this.discoveries.getAndIncrement() > 0) {
+			// The W1Master scanned the bus when it was created
+			this.w1Master.checkDeviceChanges();
+		}
+		List<W1Device> devices = this.w1Master.getDevices(TmpDS18B20DeviceType.FAMILY_CODE);
+		Set<String> ids = new HashSet<>();
+		for (W1Device d : devices) {
+			ids.add(d.getId());
+		}
+		for (Iterator<Probe> it = this.probes.values().iterator(); it.hasNext();) {
+			Probe p = it.next();
+			if (!ids.contains(p.id)) {
+				System.err.println("DS18B20 " + p.id + ": gone");
+				p.stop();
+				it.remove();
+			}
+		}
+		for (W1Device d : devices) {
+			if (this.probes.containsKey(d.getId())) {
+				this.probes.get(d.getId()).device = d;
+			} else {
+				Probe p = new Probe(d);
+				this.probes.put(d.getId(), p);
+				if (this.started) {
+					p.start();
 				}
 			}
 		}
+	}
+
+	private synchronized List<Probe> getProbes() {
+		if (this.probes.isEmpty() && (System.currentTimeMillis() - this.lastDiscovery >= intervalMillis)) {
+			discover();
+		}
+		return new ArrayList<>(this.probes.values());
+	}
+
+	private synchronized boolean isStarted() {
+		return this.started;
+	}
+
+	/**
+	 * @return the temperature of the first probe with a valid value in degrees Celcius, 0 if there is none
+	 */
+	public double getTemperature () {
+		boolean started = isStarted();
+		for (Probe p : getProbes()) {
+			if (!started) {
+				p.read();
+			}
+			if (p.isValid()) {
+				return p.getTemperature();
+			}
+		}
 		return 0;
 	}
 
+	/**
+	 * @return the temperature in degrees Celcius of each probe by its id, NaN if there is no valid value
+	 */
+	public Map<String, Double> getTemperatures () {
+		Map<String, Double> temps = new TreeMap<>();
+		for (Probe p : getProbes()) {
+			if (!isStarted()) {
+				p.read();
+			}
+			temps.put(p.id, p.isValid() ? p.getTemperature() : Double.NaN);
+		}
+		return temps;
+	}
+
+	public long getNrOfFailures () {
+		return this.failures.get();
+	}
+
+	public long getNrOfDiscoveries () {
+		return this.discoveries.get();
+	}
+
+	/**
+	 * Parse the contents of the w1_slave file of a probe:
+	 *   72 01 4b 46 7f ff 0e 10 57 : crc=57 YES
+	 *   72 01 4b 46 7f ff 0e 10 57 t=23125
+	 *
+	 * @return the temperature in millidegrees
+	 * @throws IOException if the crc failed or the probe did not convert
+	 */
+	static int parse (String value) throws IOException {
+		int nl = value.indexOf('\n');
+		if ((nl < 0) || !value.substring(0, nl).trim().endsWith("YES")) {
+			throw new IOException("CRC check failed");
+		}
+		int t = value.indexOf("t=", nl);
+		if (t < 0) {
+			throw new IOException("No temperature");
+		}
+		int end = t + 2;
+		while ((end < value.length()) && (value.charAt(end) == '-' || Character.isDigit(value.charAt(end)))) {
+			end++;
+		}
+		try {
+			int milli = Integer.parseInt(value.substring(t + 2, end));
+			if (milli == POWER_ON_VALUE) {
+				throw new IOException("No conversion");
+			}
+			return milli;
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid temperature " + value.substring(t + 2, end));
+		}
+	}
+
+	private class Probe {
+		private final String id;
+		private volatile W1Device device;
+		private volatile double temperature = 0;
+		private volatile long readTime = 0;
+		private volatile boolean stopped = false;
+		private Thread thread; // Guarded by DS18B20.this
+
+		Probe(W1Device device) {
+			this.id = device.getId();
+			this.device = device;
+		}
+
+		// Called with the lock of DS18B20.this
+		void start() {
+			this.thread = new Thread(this::run, "ds18b20-" + this.id);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		// Called with the lock of DS18B20.this
+		void stop() {
+			this.stopped = true;
+			if (this.thread != null) {
+				this.thread.interrupt();
+			}
+		}
+
+		private void run() {
+			try {
+				while (!this.stopped) {
+					read();
+					Thread.sleep(intervalMillis);
+				}
+			} catch (InterruptedException e) {
+				// Stopped
+			}
+		}
+
+		/**
+		 * Read the probe. After a failure the bus is searched for the probe again.
+		 */
+		synchronized void read() {
+			try {
+				this.temperature = parse(this.device.getValue()) / 1000.0;
+				this.readTime = System.currentTimeMillis();
+			} catch (IOException e) {
+				DS18B20.this.failures.incrementAndGet();
+				System.err.println("DS18B20 " + this.id + ": " + e.getMessage());
+				discover();
+			}
+		}
+
+		boolean isValid() {
+			return (this.readTime > 0) && ((System.currentTimeMillis() - this.readTime) <= maxAgeMillis);
+		}
+
+		double getTemperature() {
+			return isValid() ? this.temperature : 0;
+		}
+	}
 }
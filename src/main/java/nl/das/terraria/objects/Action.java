@@ -6,6 +6,7 @@ public class Action {
 
 	private String device;
 	private Integer on_period;
+	@JsonbTransient private int deviceId = DeviceRegistry.NO_DEVICE;
 
 	public Action() { }
 
@@ -34,4 +35,17 @@ public class Action {
 	public void setOn_period (Integer on_period) {
 		this.on_period = on_period;
 	}
+
+	/**
+	 * @return the index of the device in the device list, set when the action is added to the terrarium
+	 */
+	@JsonbTransient
+	public int getDeviceId () {
+		return this.deviceId;
+	}
+
+	@JsonbTransient
+	public void setDeviceId (int deviceId) {
+		this.deviceId = deviceId;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * The changes of the terrarium from outside the control loop (the REST interface) as commands.
+ *
+ * A command is added to a lock-free queue and the control loop is woken up. At the start of
+ * each tick the control loop executes all commands in the queue, so the terrarium is only changed
+ * by the control thread and a burst of commands is executed in one go. The result of a command,
+ * or its exception, is passed back through its future. A command of which the future was cancelled
+ * (e.g. because the caller stopped waiting) is not executed anymore. Once a command is started
+ * its future cannot be cancelled, so a caller always knows whether the command was executed.
+ *
+ * Before the control loop is started (e.g. in the tests) a command is executed on the thread of the caller.
+ */
+public class CommandQueue {
+
+	/**
+	 * The maximum time a caller waits for the result of a command.
+	 */
+	public static long timeoutMillis = 5000;
+
+	private final Queue<Command<?>> queue = new ConcurrentLinkedQueue<>();
+	private final Runnable wakeUp;
+	private volatile boolean started = false;
+
+	/**
+	 * @param wakeUp wakes up the control loop
+	 */
+	public CommandQueue(Runnable wakeUp) {
+		this.wakeUp = wakeUp;
+	}
+
+	/**
+	 * From now on the commands are executed by drain().
+	 */
+	public void start() {
+		this.started = true;
+	}
+
+	/**
+	 * From now on the commands are executed on the thread of the caller again.
+	 */
+	public void stop() {
+		this.started = false;
+		drain();
+	}
+
+	public boolean isStarted() {
+		return this.started;
+	}
+
+	public <T> CompletableFuture<T> submit(Supplier<T> command) {
+		Command<T> c = new Command<>(command);
+		if (this.started) {
+			this.queue.add(c);
+			this.wakeUp.run();
+		} else {
+			synchronized (this) {
+				c.execute();
+			}
+		}
+		return c.result;
+	}
+
+	public CompletableFuture<Void> submit(Runnable command) {
+		return submit(() -> {
+			command.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Execute the commands in the queue. Only to be called by the control thread.
+	 *
+	 * @return the number of commands that were executed
+	 */
+	public int drain() {
+		int n = 0;
+		Command<?> c;
+		while ((c = this.queue.poll()) != null) {
+			if (c.execute()) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private static class Command<T> {
+		private final Supplier<T> command;
+		private final Result<T> result = new Result<>();
+
+		Command(Supplier<T> command) {
+			this.command = command;
+		}
+
+		/**
+		 * @return false if the command was cancelled
+		 */
+		boolean execute() {
+			if (!this.result.started.compareAndSet(false, true)) {
+				return false;
+			}
+			try {
+				this.result.complete(this.command.get());
+			} catch (Throwable e) {
+				this.result.completeExceptionally(e);
+			}
+			return true;
+		}
+	}
+
+	private static class Result<T> extends CompletableFuture<T> {
+		private final AtomicBoolean started = new AtomicBoolean(false);
+
+		/**
+		 * @return false if the command is started already
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return this.started.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+		}
+	}
+}
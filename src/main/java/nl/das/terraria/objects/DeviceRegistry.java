@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps the (case insensitive) device names of the device list to their index in the device list.
+ * The index is the id that is used internally for a device.
+ */
+public class DeviceRegistry {
+
+	public static final int NO_DEVICE = -1;
+	public static final String NO_DEVICE_NAME = "no device";
+
+	private final String[] names;
+	private final Map<String, Integer> ids = new HashMap<>();
+
+	public DeviceRegistry(String[] deviceList) {
+		this.names = deviceList.clone();
+		for (int i = 0; i < deviceList.length; i++) {
+			if (this.ids.put(key(deviceList[i]), i) != null) {
+				throw new IllegalArgumentException("Device '" + deviceList[i] + "' is defined more than once");
+			}
+		}
+	}
+
+	/**
+	 * @return the id of the device or NO_DEVICE if the device is unknown
+	 */
+	public int getId(String name) {
+		if (name == null) {
+			return NO_DEVICE;
+		}
+		Integer id = this.ids.get(key(name));
+		return id == null ? NO_DEVICE : id;
+	}
+
+	/**
+	 * Get the id of a device used in the settings.
+	 *
+	 * @return the id of the device or NO_DEVICE for "no device"
+	 * @throws IllegalArgumentException if the device is unknown
+	 */
+	public int resolve(String name) {
+		if (NO_DEVICE_NAME.equalsIgnoreCase(name)) {
+			return NO_DEVICE;
+		}
+		int id = getId(name);
+		if (id == NO_DEVICE) {
+			throw new IllegalArgumentException("Unknown device '" + name + "'");
+		}
+		return id;
+	}
+
+	public String getName(int id) {
+		return this.names[id];
+	}
+
+	public int size() {
+		return this.names.length;
+	}
+
+	private static String key(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+}
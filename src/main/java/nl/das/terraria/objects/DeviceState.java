@@ -34,6 +34,13 @@ public class DeviceState {
 		this.manual = false;
 	}
 
+	public DeviceState(DeviceState other) {
+		this.name = other.name;
+		this.onPeriod = other.onPeriod;
+		this.lifetime = other.lifetime;
+		this.manual = other.manual;
+	}
+
 	public void decreaseLifetime(int nrOfHours) {
 		this.lifetime -= nrOfHours;
 	}
@@ -71,23 +78,26 @@ public class DeviceState {
 	}
 
 	public String toJson() {
-		String end_time = null;
-		String state = "";
-		if (this.onPeriod == 0) {
-			state = String.format("{\"device\":\"%s\",\"state\":\"off\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, this.lifetime, this.manual ? "yes" : "no");
-		} else if(this.onPeriod == -1) {
-			state = String.format("{\"device\":\"%s\",\"state\":\"on\",\"end_time\":\"no endtime\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, this.lifetime, this.manual ? "yes" : "no");
-		} else if(this.onPeriod == -2) {
-			state = String.format("{\"device\":\"%s\",\"state\":\"on\",\"end_time\":\"until ideal temperature is reached\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, this.lifetime, this.manual ? "yes" : "no");
+		return appendJson(new StringBuilder(112)).toString();
+	}
+
+	public StringBuilder appendJson(StringBuilder sb) {
+		sb.append("{\"device\":\"").append(this.name).append("\",\"state\":\"").append(this.onPeriod == 0 ? "off" : "on").append('"');
+		if (this.onPeriod == -1) {
+			sb.append(",\"end_time\":\"no endtime\"");
+		} else if (this.onPeriod == -2) {
+			sb.append(",\"end_time\":\"until ideal temperature is reached\"");
 		} else if (this.onPeriod > 0) {
 			LocalTime t = Util.ofEpochSecond(this.onPeriod).toLocalTime();
-			end_time = String.format("%02d:%02d:%02d", t.getHour(), t.getMinute(), t.getSecond());
-			state = String.format("{\"device\":\"%s\",\"state\":\"on\",\"end_time\":\"%s\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, end_time, this.lifetime, this.manual ? "yes" : "no");
+			sb.append(",\"end_time\":\"");
+			appendTwoDigits(sb, t.getHour()).append(':');
+			appendTwoDigits(sb, t.getMinute()).append(':');
+			appendTwoDigits(sb, t.getSecond()).append('"');
 		}
-		return state;
+		return sb.append(",\"hours_on\":").append(this.lifetime).append(",\"manual\":\"").append(this.manual ? "yes" : "no").append("\"}");
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+		return sb.append((char) ('0' + (value / 10))).append((char) ('0' + (value % 10)));
 	}
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.util.Arrays;
+
+/**
+ * Min-heap of the devices that are switched on until a given end time (in Epoch-seconds).
+ *
+ * Each device is at most once in the heap. The position of every device in the heap is kept,
+ * so changing or removing the end time of a device is O(log n) and no stale entries remain.
+ * Devices with the same end time are ordered on their device index.
+ */
+public class ExpiryQueue {
+
+	private int[] heap;      // device indexes
+	private int[] pos;       // position of a device in the heap, -1 if not present
+	private long[] endTime;  // end time per device
+	private int size;
+
+	public ExpiryQueue(int nrOfDevices) {
+		this.heap = new int[nrOfDevices];
+		this.pos = new int[nrOfDevices];
+		this.endTime = new long[nrOfDevices];
+		Arrays.fill(this.pos, -1);
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the earliest end time or Long.MAX_VALUE when no device has an end time
+	 */
+	public long peekTime() {
+		return this.size == 0 ? Long.MAX_VALUE : this.endTime[this.heap[0]];
+	}
+
+	/**
+	 * Remove the device with the earliest end time if that end time has been reached.
+	 *
+	 * @return device index or -1 if no device has expired
+	 */
+	public int pollExpired(long now) {
+		if ((this.size == 0) || (this.endTime[this.heap[0]] > now)) {
+			return -1;
+		}
+		int device = this.heap[0];
+		remove(device);
+		return device;
+	}
+
+	/**
+	 * Add the device or change its end time.
+	 */
+	public void set(int device, long time) {
+		int p = this.pos[device];
+		if (p == -1) {
+			p = this.size++;
+			this.heap[p] = device;
+			this.pos[device] = p;
+			this.endTime[device] = time;
+			siftUp(p);
+		} else {
+			long old = this.endTime[device];
+			this.endTime[device] = time;
+			if (time < old) {
+				siftUp(p);
+			} else {
+				siftDown(p);
+			}
+		}
+	}
+
+	public void remove(int device) {
+		int p = this.pos[device];
+		if (p == -1) {
+			return;
+		}
+		this.pos[device] = -1;
+		int last = this.heap[--this.size];
+		if (p != this.size) {
+			this.heap[p] = last;
+			this.pos[last] = p;
+			siftUp(p);
+			siftDown(this.pos[last]);
+		}
+	}
+
+	public boolean contains(int device) {
+		return this.pos[device] != -1;
+	}
+
+	private boolean less(int d1, int d2) {
+		return (this.endTime[d1] < this.endTime[d2]) || ((this.endTime[d1] == this.endTime[d2]) && (d1 < d2));
+	}
+
+	private void siftUp(int p) {
+		int device = this.heap[p];
+		while (p > 0) {
+			int parent = (p - 1) >>> 1;
+			if (!less(device, this.heap[parent])) {
+				break;
+			}
+			move(this.heap[parent], p);
+			p = parent;
+		}
+		move(device, p);
+	}
+
+	private void siftDown(int p) {
+		int device = this.heap[p];
+		int half = this.size >>> 1;
+		while (p < half) {
+			int child = (2 * p) + 1;
+			int right = child + 1;
+			if ((right < this.size) && less(this.heap[right], this.heap[child])) {
+				child = right;
+			}
+			if (!less(this.heap[child], device)) {
+				break;
+			}
+			move(this.heap[child], p);
+			p = child;
+		}
+		move(device, p);
+	}
+
+	private void move(int device, int p) {
+		this.heap[p] = device;
+		this.pos[device] = p;
+	}
+}
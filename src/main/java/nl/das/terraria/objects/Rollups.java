@@ -0,0 +1,361 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * Running aggregates of the sensor samples and the device on-times.
+ *
+ * There are three tiers: per minute (last 24 hours), per hour (last 5 weeks) and per day (last 400 days).
+ * A tier is a ring of buckets, the bucket of a time is (local time / unit) % size, so the hours and days
+ * are those of the clock on the wall, as in TemperatureRollups. A bucket keeps
+ * the number of samples and the min, max and sum of the room temperature, terrarium temperature
+ * and humidity (in tenths), and the number of seconds each device was on.
+ *
+ * The aggregates are updated when a sample is added and when a device is switched on or off,
+ * so reading the aggregates of a bucket is O(1). All times are in Epoch-seconds as used by Util.now().
+ */
+public class Rollups {
+
+	public static final int ROOM = 0;
+	public static final int TERRARIUM = 1;
+	public static final int HUMIDITY = 2;
+	public static final int NR_OF_METRICS = 3;
+
+	public static final int MINUTE = 0;
+	public static final int HOUR = 1;
+	public static final int DAY = 2;
+
+	private static final int MAGIC = 0x524F4C32; // "ROL2", the buckets are on local time
+
+	private final int nrOfDevices;
+	private final ZoneId zone;
+	private final Tier[] tiers;
+	// Start of the current on-period of a device, or -1 if the device is off
+	private final long[] onSince;
+
+	public Rollups(int nrOfDevices) {
+		this(nrOfDevices, ZoneId.systemDefault());
+	}
+
+	/**
+	 * @param zone the time zone of the hours and days
+	 */
+	public Rollups(int nrOfDevices, ZoneId zone) {
+		this.nrOfDevices = nrOfDevices;
+		this.zone = zone;
+		this.tiers = new Tier[] {
+				new Tier(60, 24 * 60, nrOfDevices),
+				new Tier(3600, 35 * 24, nrOfDevices),
+				new Tier(86400, 400, nrOfDevices)
+		};
+		this.onSince = new long[nrOfDevices];
+		Arrays.fill(this.onSince, -1L);
+	}
+
+	/**
+	 * @param values the room temperature, terrarium temperature and humidity in tenths
+	 */
+	public synchronized void addSample(long time, int... values) {
+		for (Tier t : this.tiers) {
+			int s = t.slot(local(time) / t.unit);
+			if (s != -1) {
+				int b = s * NR_OF_METRICS;
+				for (int m = 0; m < NR_OF_METRICS; m++) {
+					if (t.count[s] == 0) {
+						t.min[b + m] = values[m];
+						t.max[b + m] = values[m];
+					} else {
+						t.min[b + m] = Math.min(t.min[b + m], values[m]);
+						t.max[b + m] = Math.max(t.max[b + m], values[m]);
+					}
+					t.sum[b + m] += values[m];
+				}
+				t.count[s]++;
+			}
+		}
+	}
+
+	public synchronized void deviceOn(int device, long time) {
+		if (this.onSince[device] == -1L) {
+			this.onSince[device] = time;
+		}
+	}
+
+	public synchronized void deviceOff(int device, long time) {
+		if (this.onSince[device] != -1L) {
+			addOnSeconds(device, this.onSince[device], time);
+			this.onSince[device] = -1L;
+		}
+	}
+
+	/**
+	 * Add the on-time until now of the devices that are on, so the buckets are up to date before they are saved.
+	 */
+	public synchronized void checkpoint(long time) {
+		for (int d = 0; d < this.nrOfDevices; d++) {
+			if ((this.onSince[d] != -1L) && (this.onSince[d] < time)) {
+				addOnSeconds(d, this.onSince[d], time);
+				this.onSince[d] = time;
+			}
+		}
+	}
+
+	private void addOnSeconds(int device, long fromTime, long toTime) {
+		long from = local(fromTime);
+		long to = local(toTime);
+		for (Tier t : this.tiers) {
+			long last = (to - 1) / t.unit;
+			for (long k = Math.max(from / t.unit, (last - t.size) + 1); k <= last; k++) {
+				int s = t.slot(k);
+				if (s != -1) {
+					t.onSeconds[(s * this.nrOfDevices) + device] += (int) (Math.min(to, (k + 1) * t.unit) - Math.max(from, k * t.unit));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the start time of the bucket of time in the tier
+	 */
+	public long getBucketStart(int tier, long time) {
+		long offset = local(time) - time;
+		return (((time + offset) / this.tiers[tier].unit) * this.tiers[tier].unit) - offset;
+	}
+
+	/**
+	 * @return the time in seconds since 1970-01-01T00:00 on the local clock
+	 */
+	private long local(long time) {
+		return time + this.zone.getRules().getOffset(Instant.ofEpochSecond(time)).getTotalSeconds();
+	}
+
+	public int getUnit(int tier) {
+		return this.tiers[tier].unit;
+	}
+
+	/**
+	 * @return the number of samples in the bucket of time in the tier
+	 */
+	public synchronized int getCount(int tier, long time) {
+		Tier t = this.tiers[tier];
+		int s = t.find(local(time) / t.unit);
+		return s == -1 ? 0 : t.count[s];
+	}
+
+	public synchronized int getMin(int tier, long time, int metric) {
+		Tier t = this.tiers[tier];
+		int s = t.find(local(time) / t.unit);
+		return ((s == -1) || (t.count[s] == 0)) ? 0 : t.min[(s * NR_OF_METRICS) + metric];
+	}
+
+	public synchronized int getMax(int tier, long time, int metric) {
+		Tier t = this.tiers[tier];
+		int s = t.find(local(time) / t.unit);
+		return ((s == -1) || (t.count[s] == 0)) ? 0 : t.max[(s * NR_OF_METRICS) + metric];
+	}
+
+	public synchronized int getAvg(int tier, long time, int metric) {
+		Tier t = this.tiers[tier];
+		int s = t.find(local(time) / t.unit);
+		return ((s == -1) || (t.count[s] == 0)) ? 0 : (int) Math.round((double) t.sum[(s * NR_OF_METRICS) + metric] / t.count[s]);
+	}
+
+	/**
+	 * @param now the current time, a device that is on is counted as on until now
+	 * @return the number of seconds the device was on in the bucket of time in the tier
+	 */
+	public synchronized long getOnSeconds(int tier, long time, int device, long now) {
+		Tier t = this.tiers[tier];
+		long k = local(time) / t.unit;
+		int s = t.find(k);
+		long secs = s == -1 ? 0 : t.onSeconds[(s * this.nrOfDevices) + device];
+		if (this.onSince[device] != -1L) {
+			secs += Math.max(0, Math.min(local(now), (k + 1) * t.unit) - Math.max(local(this.onSince[device]), k * t.unit));
+		}
+		return secs;
+	}
+
+	/**
+	 * The last n buckets of the tier until now as columns:
+	 * {"step":..,"t":[..],"count":[..],"room":{"min":[..],"max":[..],"avg":[..]},"terrarium":{..},"humidity":{..},"on_seconds":{"device":[..],..}}
+	 * t is the start of the bucket in Epoch-seconds.
+	 */
+	public synchronized String toJson(int tier, int n, long now, String[] deviceList) {
+		Tier t = this.tiers[tier];
+		int nr = Math.max(1, Math.min(n, t.size));
+		long offset = local(now) - now;
+		// The start of the first bucket in Epoch-seconds
+		long first = ((((now + offset) / t.unit) - nr) + 1) * t.unit - offset;
+		StringBuilder sb = new StringBuilder(256 + (nr * 64));
+		sb.append("{\"step\":").append(t.unit).append(",\"t\":[");
+		for (int i = 0; i < nr; i++) {
+			sb.append(i == 0 ? "" : ",").append(first + (i * t.unit));
+		}
+		sb.append("],\"count\":[");
+		for (int i = 0; i < nr; i++) {
+			sb.append(i == 0 ? "" : ",").append(getCount(tier, first + (i * t.unit)));
+		}
+		sb.append("]");
+		String[] names = {"room", "terrarium", "humidity"};
+		for (int m = 0; m < NR_OF_METRICS; m++) {
+			sb.append(",\"").append(names[m]).append("\":{\"min\":[");
+			for (int i = 0; i < nr; i++) {
+				sb.append(i == 0 ? "" : ",").append(getMin(tier, first + (i * t.unit), m));
+			}
+			sb.append("],\"max\":[");
+			for (int i = 0; i < nr; i++) {
+				sb.append(i == 0 ? "" : ",").append(getMax(tier, first + (i * t.unit), m));
+			}
+			sb.append("],\"avg\":[");
+			for (int i = 0; i < nr; i++) {
+				sb.append(i == 0 ? "" : ",").append(getAvg(tier, first + (i * t.unit), m));
+			}
+			sb.append("]}");
+		}
+		sb.append(",\"on_seconds\":{");
+		for (int d = 0; d < Math.min(this.nrOfDevices, deviceList.length); d++) {
+			sb.append(d == 0 ? "\"" : ",\"").append(deviceList[d]).append("\":[");
+			for (int i = 0; i < nr; i++) {
+				sb.append(i == 0 ? "" : ",").append(getOnSeconds(tier, first + (i * t.unit), d, now));
+			}
+			sb.append("]");
+		}
+		return sb.append("}}").toString();
+	}
+
+	/**
+	 * Save the buckets to file. The file is replaced atomically.
+	 */
+	public synchronized void save(Path file) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(this.nrOfDevices);
+			for (Tier t : this.tiers) {
+				out.writeInt(t.size);
+				for (int s = 0; s < t.size; s++) {
+					out.writeLong(t.key[s]);
+					out.writeInt(t.count[s]);
+					for (int m = 0; m < NR_OF_METRICS; m++) {
+						out.writeInt(t.min[(s * NR_OF_METRICS) + m]);
+						out.writeInt(t.max[(s * NR_OF_METRICS) + m]);
+						out.writeLong(t.sum[(s * NR_OF_METRICS) + m]);
+					}
+					for (int d = 0; d < this.nrOfDevices; d++) {
+						out.writeInt(t.onSeconds[(s * this.nrOfDevices) + d]);
+					}
+				}
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Load the buckets that were saved by save(). A file of another layout is ignored.
+	 *
+	 * @return true if the file was loaded
+	 */
+	public synchronized boolean load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if ((in.readInt() != MAGIC) || (in.readInt() != this.nrOfDevices)) {
+				return false;
+			}
+			for (Tier t : this.tiers) {
+				if (in.readInt() != t.size) {
+					return false;
+				}
+				for (int s = 0; s < t.size; s++) {
+					t.key[s] = in.readLong();
+					t.count[s] = in.readInt();
+					for (int m = 0; m < NR_OF_METRICS; m++) {
+						t.min[(s * NR_OF_METRICS) + m] = in.readInt();
+						t.max[(s * NR_OF_METRICS) + m] = in.readInt();
+						t.sum[(s * NR_OF_METRICS) + m] = in.readLong();
+					}
+					for (int d = 0; d < this.nrOfDevices; d++) {
+						t.onSeconds[(s * this.nrOfDevices) + d] = in.readInt();
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static class Tier {
+		private final int unit;
+		private final int size;
+		private final int nrOfDevices;
+		// The time / unit of the bucket in a slot
+		private final long[] key;
+		private final int[] count;
+		private final int[] min;
+		private final int[] max;
+		private final long[] sum;
+		private final int[] onSeconds;
+
+		private Tier(int unit, int size, int nrOfDevices) {
+			this.unit = unit;
+			this.size = size;
+			this.nrOfDevices = nrOfDevices;
+			this.key = new long[size];
+			Arrays.fill(this.key, -1L);
+			this.count = new int[size];
+			this.min = new int[size * NR_OF_METRICS];
+			this.max = new int[size * NR_OF_METRICS];
+			this.sum = new long[size * NR_OF_METRICS];
+			this.onSeconds = new int[size * nrOfDevices];
+		}
+
+		/**
+		 * @return the slot of bucket k, emptied if it held an older bucket, or -1 if it holds a newer bucket
+		 */
+		private int slot(long k) {
+			int s = (int) (k % this.size);
+			if (this.key[s] > k) {
+				return -1;
+			}
+			if (this.key[s] != k) {
+				this.key[s] = k;
+				this.count[s] = 0;
+				for (int m = 0; m < NR_OF_METRICS; m++) {
+					this.min[(s * NR_OF_METRICS) + m] = 0;
+					this.max[(s * NR_OF_METRICS) + m] = 0;
+					this.sum[(s * NR_OF_METRICS) + m] = 0;
+				}
+				for (int d = 0; d < this.nrOfDevices; d++) {
+					this.onSeconds[(s * this.nrOfDevices) + d] = 0;
+				}
+			}
+			return s;
+		}
+
+		/**
+		 * @return the slot of bucket k or -1 if it is not kept
+		 */
+		private int find(long k) {
+			int s = (int) (k % this.size);
+			return this.key[s] == k ? s : -1;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+/**
+ * The rulesets and the sprayer rule compiled into primitive arrays,
+ * so they can be evaluated every minute without parsing or comparing strings.
+ *
+ * The rules of ruleset rs are firstRule[rs] .. firstRule[rs + 1] - 1 and
+ * the actions of rule r are firstAction[r] .. firstAction[r + 1] - 1.
+ * The device of an action is its device id (Action.getDeviceId()), or NO_DEVICE for "no device".
+ * A plan is never changed, when a ruleset is changed a new plan is made.
+ */
+public class RulePlan {
+
+	public static final int NO_DEVICE = DeviceRegistry.NO_DEVICE;
+
+	// Per ruleset
+	final int nrOfRulesets;
+	final boolean[] enabled;
+	final int[] from;
+	final int[] to;
+	final int[] idealTemp;
+	final int[] firstRule;
+	// Per rule
+	final int[] value;
+	final int[] firstAction;
+	// Per action
+	final int[] device;
+	final int[] onPeriod;
+	// Sprayer rule
+	final int[] sprayerDevice;
+	final int[] sprayerOnPeriod;
+
+	public RulePlan(Ruleset[] rulesets, SprayerRule sprayerRule) {
+		this.nrOfRulesets = rulesets.length;
+		this.enabled = new boolean[this.nrOfRulesets];
+		this.from = new int[this.nrOfRulesets];
+		this.to = new int[this.nrOfRulesets];
+		this.idealTemp = new int[this.nrOfRulesets];
+		this.firstRule = new int[this.nrOfRulesets + 1];
+		int nrOfRules = 0;
+		int nrOfActions = 0;
+		for (Ruleset rs : rulesets) {
+			nrOfRules += rs.getRules().length;
+			for (Rule r : rs.getRules()) {
+				nrOfActions += r.getActions().length;
+			}
+		}
+		this.value = new int[nrOfRules];
+		this.firstAction = new int[nrOfRules + 1];
+		this.device = new int[nrOfActions];
+		this.onPeriod = new int[nrOfActions];
+		int rix = 0;
+		int aix = 0;
+		for (int rs = 0; rs < this.nrOfRulesets; rs++) {
+			Ruleset ruleset = rulesets[rs];
+			this.enabled[rs] = ruleset.getActive().equalsIgnoreCase("yes");
+			this.from[rs] = toMinutes(ruleset.getFrom());
+			this.to[rs] = toMinutes(ruleset.getTo());
+			this.idealTemp[rs] = ruleset.getTemp_ideal() == null ? 0 : ruleset.getTemp_ideal();
+			this.firstRule[rs] = rix;
+			for (Rule r : ruleset.getRules()) {
+				this.value[rix] = r.getValue();
+				this.firstAction[rix] = aix;
+				for (Action a : r.getActions()) {
+					this.device[aix] = a.getDeviceId();
+					this.onPeriod[aix] = a.getOnPeriod();
+					aix++;
+				}
+				rix++;
+			}
+		}
+		this.firstRule[this.nrOfRulesets] = rix;
+		this.firstAction[nrOfRules] = aix;
+		Action[] sprayerActions = sprayerRule == null ? new Action[0] : sprayerRule.getActions();
+		this.sprayerDevice = new int[sprayerActions.length];
+		this.sprayerOnPeriod = new int[sprayerActions.length];
+		for (int i = 0; i < sprayerActions.length; i++) {
+			this.sprayerDevice[i] = sprayerActions[i].getDeviceId();
+			this.sprayerOnPeriod[i] = sprayerActions[i].getOnPeriod();
+		}
+	}
+
+	public boolean hasEnabledRuleset() {
+		for (boolean e : this.enabled) {
+			if (e) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if ruleset rs is active on the given minute of the day
+	 */
+	public boolean isActive(int rs, int minutes) {
+		return this.enabled[rs] && (minutes >= this.from[rs]) && (minutes <= this.to[rs]);
+	}
+
+	/**
+	 * @return "hh:mm" as minutes of the day or -1 if it is not a valid time
+	 */
+	private static int toMinutes(String hhmm) {
+		if ((hhmm == null) || !hhmm.contains(":")) {
+			return -1;
+		}
+		String[] parts = hhmm.trim().split(":");
+		try {
+			return (Integer.parseInt(parts[0].trim()) * 60) + Integer.parseInt(parts[1].trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
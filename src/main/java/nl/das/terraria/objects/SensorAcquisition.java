@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+/**
+ * The only user of the sensor hardware.
+ *
+ * Once started, a background thread reads the sensors every intervalMillis and publishes the values
+ * as an immutable SensorSnapshot. The control loop and the REST interface only take the latest snapshot,
+ * so they never wait for the hardware. A caller that needs a fresher snapshot asks for a refresh:
+ * all callers that ask at the same time are served by the same reading.
+ *
+ * When it is not started (e.g. in the tests) the last values of the sensors are taken on the thread of the caller,
+ * the room sensor is only read by the background thread.
+ */
+public class SensorAcquisition {
+
+	public static long intervalMillis = 10000;
+	public static long refreshTimeoutMillis = 5000;
+
+	private final Sensors sensors;
+	private final Object lock = new Object();
+	private volatile SensorSnapshot snapshot;
+	private long nrOfReads = 0; // Guarded by lock
+	private boolean refresh = false; // Guarded by lock
+	private volatile Thread thread;
+
+	public SensorAcquisition(Sensors sensors) {
+		this.sensors = sensors;
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.sensors.start();
+			this.thread = new Thread(this::run, "sensor-acquisition");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				SensorSnapshot s;
+				try {
+					this.sensors.readRoom();
+					s = this.sensors.read();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					s = this.snapshot;
+				}
+				synchronized (this.lock) {
+					this.snapshot = s;
+					this.nrOfReads++;
+					this.refresh = false;
+					this.lock.notifyAll();
+					long end = System.currentTimeMillis() + intervalMillis;
+					long remaining = intervalMillis;
+					while (!this.refresh && (remaining > 0)) {
+						this.lock.wait(remaining);
+						remaining = end - System.currentTimeMillis();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	public long getNrOfReads() {
+		synchronized (this.lock) {
+			return this.nrOfReads;
+		}
+	}
+
+	/**
+	 * @return the latest snapshot
+	 */
+	public SensorSnapshot latest() {
+		SensorSnapshot s = this.snapshot;
+		if ((s == null) || (this.thread == null)) {
+			s = this.sensors.read();
+			this.snapshot = s;
+		}
+		return s;
+	}
+
+	/**
+	 * @param maxAgeMillis the maximum age of the snapshot
+	 * @return the latest snapshot, or a new one if the latest is older than maxAgeMillis.
+	 *         If the new reading takes longer than refreshTimeoutMillis the latest snapshot is returned.
+	 */
+	public SensorSnapshot get(long maxAgeMillis) {
+		SensorSnapshot s = latest();
+		if ((s.getAgeMillis() <= maxAgeMillis) || (this.thread == null)) {
+			return s;
+		}
+		synchronized (this.lock) {
+			// Wait for the reading that is busy, or else for the next one
+			long target = this.nrOfReads + 1;
+			if (this.snapshot.getAgeMillis() > maxAgeMillis) {
+				this.refresh = true;
+				this.lock.notifyAll();
+				long end = System.currentTimeMillis() + refreshTimeoutMillis;
+				long remaining = refreshTimeoutMillis;
+				try {
+					while ((this.nrOfReads < target) && (remaining > 0)) {
+						this.lock.wait(remaining);
+						remaining = end - System.currentTimeMillis();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return this.snapshot;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Ring buffer with the most recent sensor samples.
+ *
+ * The samples are kept in primitive arrays that are allocated once: the time in Epoch-seconds,
+ * the room temperature, terrarium temperature and humidity in tenths and a quality flag.
+ *
+ * There is one writer (the control loop) that never locks or allocates. The writer announces the sample
+ * it is going to write, writes it in its slot and then publishes the number of samples. A reader copies
+ * the published samples and then checks which sample the writer announced: the samples that were
+ * (or are being) overwritten in the meantime are dropped from the copy, so a reader always gets
+ * a consistent snapshot.
+ */
+public class SensorHistory {
+
+	public static final byte QUALITY_OK = 0;
+	/** The values were set through the REST interface */
+	public static final byte QUALITY_TEST = 1;
+	/** The terrarium sensor could not be read */
+	public static final byte QUALITY_NO_TERRARIUM = 2;
+	/** The room sensor could not be read, the room values are of the last reading that succeeded. Can be combined with QUALITY_NO_TERRARIUM */
+	public static final byte QUALITY_NO_ROOM = 4;
+
+	private final int capacity;
+	private final long[] time;
+	private final short[] room;
+	private final short[] terrarium;
+	private final short[] humidity;
+	private final byte[] quality;
+	private volatile long nrOfSamples = 0;
+	private volatile long writing = 0;
+
+	public SensorHistory(int capacity) {
+		this.capacity = capacity;
+		this.time = new long[capacity];
+		this.room = new short[capacity];
+		this.terrarium = new short[capacity];
+		this.humidity = new short[capacity];
+		this.quality = new byte[capacity];
+	}
+
+	/**
+	 * Only to be called by the control loop.
+	 *
+	 * @param room      temperature in tenths of degrees
+	 * @param terrarium temperature in tenths of degrees
+	 * @param humidity  in tenths of percents
+	 */
+	public void add(long time, int room, int terrarium, int humidity, byte quality) {
+		long n = this.nrOfSamples;
+		int i = (int) (n % this.capacity);
+		this.writing = n + 1;
+		VarHandle.storeStoreFence();
+		this.time[i] = time;
+		this.room[i] = (short) room;
+		this.terrarium[i] = (short) terrarium;
+		this.humidity[i] = (short) humidity;
+		this.quality[i] = quality;
+		this.nrOfSamples = n + 1;
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return a copy of the samples with a time >= from, oldest first
+	 */
+	public Snapshot since(long from) {
+		long end = this.nrOfSamples;
+		long start = Math.max(0, end - this.capacity);
+		// Find the first sample with a time >= from, the times are ascending
+		long lo = start;
+		long hi = end;
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (this.time[(int) (mid % this.capacity)] < from) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		int n = (int) (end - lo);
+		Snapshot s = new Snapshot(n);
+		for (int k = 0; k < n; k++) {
+			int i = (int) ((lo + k) % this.capacity);
+			s.time[k] = this.time[i];
+			s.room[k] = this.room[i];
+			s.terrarium[k] = this.terrarium[i];
+			s.humidity[k] = this.humidity[i];
+			s.quality[k] = this.quality[i];
+		}
+		// Drop the samples that were overwritten while they were copied
+		VarHandle.acquireFence();
+		long valid = this.writing - this.capacity;
+		s.offset = (int) Math.min(n, Math.max(0, valid - lo));
+		// The binary search may have read an overwritten time as well, so remove older samples that slipped in
+		while ((s.offset < n) && (s.time[s.offset] < from)) {
+			s.offset++;
+		}
+		return s;
+	}
+
+	/**
+	 * Copy of the samples in time order. The samples before offset were overwritten during the copy and are skipped.
+	 */
+	public static class Snapshot {
+		private final long[] time;
+		private final short[] room;
+		private final short[] terrarium;
+		private final short[] humidity;
+		private final byte[] quality;
+		private int offset = 0;
+
+		private Snapshot(int n) {
+			this.time = new long[n];
+			this.room = new short[n];
+			this.terrarium = new short[n];
+			this.humidity = new short[n];
+			this.quality = new byte[n];
+		}
+
+		public int size() {
+			return this.time.length - this.offset;
+		}
+
+		public long getTime(int i) {
+			return this.time[this.offset + i];
+		}
+
+		public int getRoom(int i) {
+			return this.room[this.offset + i];
+		}
+
+		public int getTerrarium(int i) {
+			return this.terrarium[this.offset + i];
+		}
+
+		public int getHumidity(int i) {
+			return this.humidity[this.offset + i];
+		}
+
+		public int getQuality(int i) {
+			return this.quality[this.offset + i];
+		}
+
+		/**
+		 * The samples as columns: {"t":[..],"room":[..],"terrarium":[..],"humidity":[..],"quality":[..]}
+		 * t is in Epoch-seconds, the values are in tenths.
+		 */
+		public String toJson() {
+			int n = size();
+			StringBuilder sb = new StringBuilder(64 + (n * 40));
+			sb.append("{\"t\":[");
+			for (int i = 0; i < n; i++) {
+				sb.append(i == 0 ? "" : ",").append(getTime(i));
+			}
+			sb.append("],\"room\":[");
+			for (int i = 0; i < n; i++) {
+				sb.append(i == 0 ? "" : ",").append(getRoom(i));
+			}
+			sb.append("],\"terrarium\":[");
+			for (int i = 0; i < n; i++) {
+				sb.append(i == 0 ? "" : ",").append(getTerrarium(i));
+			}
+			sb.append("],\"humidity\":[");
+			for (int i = 0; i < n; i++) {
+				sb.append(i == 0 ? "" : ",").append(getHumidity(i));
+			}
+			sb.append("],\"quality\":[");
+			for (int i = 0; i < n; i++) {
+				sb.append(i == 0 ? "" : ",").append(getQuality(i));
+			}
+			return sb.append("]}").toString();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The sensor values of one reading. A snapshot is immutable, so it can be shared between threads.
+ */
+public final class SensorSnapshot {
+
+	private static DateTimeFormatter clockfmt = DateTimeFormatter.ofPattern("dd-MM-y HH:mm");
+
+	private final long sampleTime;
+	private final int room;
+	private final int terrarium;
+	private final int humidity;
+	private final byte quality;
+
+	/**
+	 * @param sampleTime time of the reading in milliseconds (System.currentTimeMillis())
+	 * @param room       temperature in tenths of degrees
+	 * @param terrarium  temperature in tenths of degrees
+	 * @param humidity   in tenths of percents
+	 * @param quality    see SensorHistory
+	 */
+	public SensorSnapshot(long sampleTime, int room, int terrarium, int humidity, byte quality) {
+		this.sampleTime = sampleTime;
+		this.room = room;
+		this.terrarium = terrarium;
+		this.humidity = humidity;
+		this.quality = quality;
+	}
+
+	public long getSampleTime() {
+		return this.sampleTime;
+	}
+
+	public long getAgeMillis() {
+		return System.currentTimeMillis() - this.sampleTime;
+	}
+
+	public int getRoom() {
+		return this.room;
+	}
+
+	public int getTerrarium() {
+		return this.terrarium;
+	}
+
+	public int getHumidity() {
+		return this.humidity;
+	}
+
+	public byte getQuality() {
+		return this.quality;
+	}
+
+	/**
+	 * The snapshot in the format of the Sensors object, with the time of the reading (milliseconds)
+	 * and its age (milliseconds) added:
+	 * {"clock":"dd-MM-y HH:mm","time":..,"age":..,"sensors":[{"location":"room","temperature":..,"humidity":..},{"location":"terrarium",..}]}
+	 */
+	public String toJson() {
+		LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(this.sampleTime), ZoneId.systemDefault());
+		return new StringBuilder(192)
+			.append("{\"clock\":\"").append(t.format(clockfmt)).append("\",\"time\":").append(this.sampleTime)
+			.append(",\"age\":").append(Math.max(0, getAgeMillis()))
+			.append(",\"sensors\":[{\"location\":\"room\",\"temperature\":").append(Math.round(this.room / 10.0))
+			.append(",\"humidity\":").append(Math.round(this.humidity / 10.0))
+			.append("},{\"location\":\"terrarium\",\"temperature\":").append(Math.round(this.terrarium / 10.0))
+			.append(",\"humidity\":0}]}")
+			.toString();
+	}
+}
@@ -9,6 +9,7 @@
 
 package nl.das.terraria.objects;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -28,10 +29,17 @@ public class Sensors {
 	private String clock;
 	private Sensor[] sensors = new Sensor[2];
 	// Initialize the W1 bus (connected on GPIO 7)
-	@JsonbTransient	private W1Master w1Master = new W1Master();
+	@JsonbTransient	private W1Master w1Master = new W1Master(DS18B20.devicesPath);
 	// Initialize the Temperature sensor
 	@JsonbTransient	private DS18B20 terrarium = new DS18B20(this.w1Master);
 	@JsonbTransient	private DHT22 room = new DHT22(RaspiPin.GPIO_27);
+	// Last values in tenths
+	@JsonbTransient	private int roomTenths;
+	@JsonbTransient	private int humidityTenths;
+	@JsonbTransient	private int terrariumTenths;
+	// The last reading of the room sensor, by the SensorAcquisition thread
+	@JsonbTransient	private long lastRoomRead = 0;
+	@JsonbTransient	private volatile boolean roomFailed = false;
 
 	public Sensors() {
 		this.clock = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-y HH:mm"));
@@ -41,10 +49,88 @@ public class Sensors {
 
 	@JsonbTransient
 	public void readSensorValues() {
+		setValues(read());
+	}
+
+	/**
+	 * Take the values of the last readings of the sensors, see readRoom() and DS18B20.
+	 */
+	@JsonbTransient
+	public SensorSnapshot read() {
+		double tr = this.room.getTemperature();
+		double hr = this.room.getHumidity();
+		double tt = this.terrarium.getTemperature();
+		byte quality = tt == 0 ? SensorHistory.QUALITY_NO_TERRARIUM : SensorHistory.QUALITY_OK;
+		if (this.roomFailed) {
+			quality |= SensorHistory.QUALITY_NO_ROOM;
+		}
+		return new SensorSnapshot(System.currentTimeMillis(), (int) Math.round(tr * 10), (int) Math.round(tt * 10), (int) Math.round(hr * 10), quality);
+	}
+
+	/**
+	 * Read the room sensor, at most once every DHT22.MIN_MILLISECS_BETWEEN_READS.
+	 * This takes up to a second, so it should only be done by the SensorAcquisition thread.
+	 */
+	@JsonbTransient
+	public void readRoom() {
+		long now = System.currentTimeMillis();
+		if ((now - this.lastRoomRead) < DHT22.MIN_MILLISECS_BETWEEN_READS) {
+			return;
+		}
+		this.lastRoomRead = now;
+		try {
+			this.roomFailed = !this.room.read(true);
+		} catch (IOException e) {
+			// Counted by the DHT22, see /sensors/stats
+			this.roomFailed = true;
+		}
+	}
+
+	/**
+	 * Take the values of a reading.
+	 */
+	@JsonbTransient
+	public void setValues(SensorSnapshot s) {
 		this.clock = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-y HH:mm"));
-		this.sensors[0].setTemperature((int) Math.round(this.room.getTemperature()));
-		this.sensors[0].setHumidity((int) Math.round(this.room.getHumidity()));
-		this.sensors[1].setTemperature((int) Math.round(this.terrarium.getTemperature()));
+		this.sensors[0].setTemperature((int) Math.round(s.getRoom() / 10.0));
+		this.sensors[0].setHumidity((int) Math.round(s.getHumidity() / 10.0));
+		this.sensors[1].setTemperature((int) Math.round(s.getTerrarium() / 10.0));
+		this.roomTenths = s.getRoom();
+		this.humidityTenths = s.getHumidity();
+		this.terrariumTenths = s.getTerrarium();
+	}
+
+	/**
+	 * Start reading the terrarium probes in the background, see DS18B20.
+	 */
+	@JsonbTransient
+	public void start() {
+		this.terrarium.start();
+	}
+
+	@JsonbTransient
+	public DS18B20 getTerrariumSensor() {
+		return this.terrarium;
+	}
+
+	@JsonbTransient
+	public DHT22 getRoomSensor() {
+		return this.room;
+	}
+
+	@JsonbTransient
+	public int getRoomTenths() {
+		return this.roomTenths;
+	}
+
+	@JsonbTransient
+	public int getHumidityTenths() {
+		return this.humidityTenths;
+	}
+
+	@JsonbTransient
+	public int getTerrariumTenths() {
+		return this.terrariumTenths;
 	}
 
 	@JsonbTransient
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The changes of the device states, the sensor values and the trace as events for the clients of /events.
+ *
+ * The control loop only marks what has changed. The first change wakes up the events thread, which waits
+ * coalesceMillis so that all changes of one tick are collected, and then sends one event with the new state
+ * of everything that has changed:
+ *   {"version":..,"time":..,"devices":[{"device":..,"state":..,..}],"sensors":{"room":..,"terrarium":..,"humidity":..},"trace":"on"}
+ * The devices are in the format of /state, the sensor values are in tenths.
+ *
+ * Each subscriber has a buffer of bufferSize events. When a client is too slow the oldest event is dropped,
+ * so a client can never hold up the control loop.
+ */
+public class StateEvents {
+
+	public static int bufferSize = 64;
+	public static int maxNrOfSubscribers = 8;
+	public static long coalesceMillis = 200;
+
+	private final Object lock = new Object();
+	// Guarded by lock
+	private final BitSet devices = new BitSet();
+	private boolean sensors = false;
+	private boolean trace = false;
+	private boolean dirty = false;
+	private int room;
+	private int terrarium;
+	private int humidity;
+	// End of guarded by lock
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+	private Thread thread;
+
+	public void deviceChanged(int ix) {
+		if (!this.subscribers.isEmpty()) {
+			synchronized (this.lock) {
+				this.devices.set(ix);
+				changed();
+			}
+		}
+	}
+
+	/**
+	 * @param room      temperature in tenths of degrees
+	 * @param terrarium temperature in tenths of degrees
+	 * @param humidity  in tenths of percents
+	 */
+	public void sensorsChanged(int room, int terrarium, int humidity) {
+		if (!this.subscribers.isEmpty()) {
+			synchronized (this.lock) {
+				this.room = room;
+				this.terrarium = terrarium;
+				this.humidity = humidity;
+				this.sensors = true;
+				changed();
+			}
+		}
+	}
+
+	public void traceChanged() {
+		if (!this.subscribers.isEmpty()) {
+			synchronized (this.lock) {
+				this.trace = true;
+				changed();
+			}
+		}
+	}
+
+	// Called with lock
+	private void changed() {
+		if (!this.dirty) {
+			this.dirty = true;
+			this.lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @return the new subscriber or null if there are maxNrOfSubscribers already
+	 */
+	public synchronized Subscriber subscribe() {
+		if (this.subscribers.size() >= maxNrOfSubscribers) {
+			return null;
+		}
+		Subscriber s = new Subscriber();
+		this.subscribers.add(s);
+		if (this.thread == null) {
+			this.thread = new Thread(this::run, "state-events");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+		return s;
+	}
+
+	public void unsubscribe(Subscriber s) {
+		this.subscribers.remove(s);
+	}
+
+	public int getNrOfSubscribers() {
+		return this.subscribers.size();
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				synchronized (this.lock) {
+					while (!this.dirty) {
+						this.lock.wait();
+					}
+				}
+				// Collect the other changes of this tick
+				Thread.sleep(coalesceMillis);
+				String event = next();
+				for (Subscriber s : this.subscribers) {
+					s.offer(event);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * @return the event with everything that has changed since the previous event
+	 */
+	private String next() {
+		BitSet devs;
+		boolean sens;
+		boolean trc;
+		int r;
+		int t;
+		int h;
+		synchronized (this.lock) {
+			devs = (BitSet) this.devices.clone();
+			sens = this.sensors;
+			trc = this.trace;
+			r = this.room;
+			t = this.terrarium;
+			h = this.humidity;
+			this.devices.clear();
+			this.sensors = false;
+			this.trace = false;
+			this.dirty = false;
+		}
+		TerrariumSnapshot snap = Terrarium.getInstance().getSnapshot();
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"version\":").append(snap.getVersion()).append(",\"time\":").append(System.currentTimeMillis());
+		if (!devs.isEmpty()) {
+			sb.append(",\"devices\":[");
+			String sep = "";
+			for (int ix = devs.nextSetBit(0); ix >= 0; ix = devs.nextSetBit(ix + 1)) {
+				if (ix < snap.getNrOfDevices()) {
+					sb.append(sep);
+					snap.appendDeviceJson(ix, sb);
+					sep = ",";
+				}
+			}
+			sb.append(']');
+		}
+		if (sens) {
+			sb.append(",\"sensors\":{\"room\":").append(r).append(",\"terrarium\":").append(t).append(",\"humidity\":").append(h).append('}');
+		}
+		if (trc) {
+			sb.append(",\"trace\":\"").append(snap.isTraceOn() ? "on" : "off").append('"');
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * The events for one client.
+	 */
+	public static class Subscriber {
+		private final ArrayDeque<String> events = new ArrayDeque<>(); // Guarded by this
+		private long nrOfDropped = 0; // Guarded by this
+
+		synchronized void offer(String event) {
+			if (this.events.size() >= bufferSize) {
+				this.events.poll();
+				this.nrOfDropped++;
+			}
+			this.events.add(event);
+			notifyAll();
+		}
+
+		/**
+		 * @return the oldest event, or null if there was none within timeoutMillis
+		 */
+		public synchronized String take(long timeoutMillis) throws InterruptedException {
+			long end = System.currentTimeMillis() + timeoutMillis;
+			long remaining = timeoutMillis;
+			while (this.events.isEmpty() && (remaining > 0)) {
+				wait(remaining);
+				remaining = end - System.currentTimeMillis();
+			}
+			return this.events.poll();
+		}
+
+		public synchronized long getNrOfDropped() {
+			return this.nrOfDropped;
+		}
+	}
+}
@@ -14,10 +14,11 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,7 +58,6 @@ public class Terrarium {
 	@SuppressWarnings("unused")
 	private static Logger log = LoggerFactory.getLogger(Terrarium.class);
 
-	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("HH:mm:ss");
 
 	public static int NR_OF_DEVICES = 11;
 	public static final int NR_OF_RULESETS = 2;
@@ -75,21 +75,44 @@ public class Terrarium {
 	public Ruleset[] rulesets = new Ruleset[NR_OF_RULESETS];
 	public SprayerRule sprayerRule;
 	@JsonbTransient private static Map<String, Pin> devicePin;
+	@JsonbTransient private DeviceRegistry registry;
 	@JsonbTransient private boolean sprayerRuleActive = false;
 	@JsonbTransient private long sprayerRuleDelayEndtime;
 	@JsonbTransient	private static Device[] devices = new Device[NR_OF_DEVICES];
 	@JsonbTransient private static DeviceState[] devStates = new DeviceState[NR_OF_DEVICES];
+	@JsonbTransient private static ExpiryQueue expiries = new ExpiryQueue(NR_OF_DEVICES);
 	@JsonbTransient private boolean test = false;
 	@JsonbTransient private Sensors sensors = new Sensors();
+	@JsonbTransient private SensorAcquisition acquisition;
+	@JsonbTransient private SensorHistory sensorHistory = new SensorHistory(sensorHistorySize);
+	@JsonbTransient private Rollups rollups;
 	@JsonbTransient private LocalDateTime now;
 	@JsonbTransient private boolean traceOn = false;
 	@JsonbTransient private long traceStartTime;
 	@JsonbTransient private static int[] ruleActiveForDevice;
+	@JsonbTransient private TimerPlan timerPlan;
+	@JsonbTransient private RulePlan rulePlan;
 	@JsonbTransient private boolean fan_in_state = false;
 	@JsonbTransient private boolean fan_out_state = false;
+	@JsonbTransient private int fanIn;
+	@JsonbTransient private int fanOut;
 	@JsonbTransient private static Terrarium instance = null;
+	@JsonbTransient private static Runnable wakeUpListener = () -> { };
+	@JsonbTransient private static final AtomicLong version = new AtomicLong();
+	@JsonbTransient private static final StateEvents events = new StateEvents();
+	@JsonbTransient private static final CommandQueue commands = new CommandQueue(Terrarium::wakeUp);
+	@JsonbTransient private static volatile TerrariumSnapshot snapshot;
+	@JsonbTransient private static long publishedVersion = -1; // Guarded by version
+	@JsonbTransient private SensorSnapshot lastSensors;
 
 	@JsonbTransient public static String traceFolder = "tracefiles";
+	@JsonbTransient public static boolean traceText = true;
+	@JsonbTransient public static boolean traceBinary = false;
+	// 48 hours at a sample every 10 seconds
+	@JsonbTransient public static int sensorHistorySize = 48 * 360;
+	@JsonbTransient public static String rollupsFile = "rollups.bin";
+	// Compact old temperature tracefiles instead of deleting them
+	@JsonbTransient public static boolean compactHistory = true;
 	@JsonbTransient public static String traceStateFilename;
 	@JsonbTransient public static String traceTempFilename;
 
@@ -130,6 +153,10 @@ public class Terrarium {
 		for (int i = 0; i < NR_OF_DEVICES; i++) {
 			ruleActiveForDevice[i] = -1;
 		}
+		// Compiling the plans resolves the devices, so an unknown device fails here
+		instance.getTimerPlan();
+		instance.getRulePlan();
+		changed();
 		return instance;
 	}
 
@@ -145,6 +172,168 @@ public class Terrarium {
 		return this.now;
 	}
 
+	/**
+	 * Register the action to take when the state is changed from outside the control loop,
+	 * so the control loop can re-evaluate its next deadline.
+	 */
+	@JsonbTransient
+	public static void setWakeUpListener(Runnable listener) {
+		wakeUpListener = listener;
+	}
+
+	private static void wakeUp() {
+		wakeUpListener.run();
+	}
+
+	/**
+	 * @return the version of the state, timers, rulesets, sprayer rule and properties.
+	 *         It is increased by every change, so a response that was built for a version can be reused until it changes.
+	 */
+	@JsonbTransient
+	public static long getVersion() {
+		return version.get();
+	}
+
+	private static void changed() {
+		version.incrementAndGet();
+		if (!commands.isStarted() && (instance != null)) {
+			// There is no control loop to publish the change
+			instance.publish();
+		}
+	}
+
+	/**
+	 * Wait until a snapshot with a version beyond since is published, or the timeout has passed.
+	 *
+	 * @return the version of the published snapshot
+	 */
+	@JsonbTransient
+	public static long awaitVersion(long since, long timeoutMillis) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeoutMillis;
+		synchronized (version) {
+			long remaining = timeoutMillis;
+			while ((publishedVersion <= since) && (remaining > 0)) {
+				version.wait(remaining);
+				remaining = end - System.currentTimeMillis();
+			}
+			return publishedVersion;
+		}
+	}
+
+	/**
+	 * Publish a new snapshot if anything has changed since the last one.
+	 * To be called by the control loop at the end of each tick.
+	 */
+	@JsonbTransient
+	public void publish() {
+		TerrariumSnapshot s = snapshot;
+		if ((s == null) || (s.getVersion() != getVersion()) || (s.isSprayerRuleActive() != this.sprayerRuleActive)
+				|| !s.hasRuleActive(Terrarium.ruleActiveForDevice) || (!this.test && (s.getSensors() != this.lastSensors))) {
+			s = takeSnapshot();
+			snapshot = s;
+			synchronized (version) {
+				publishedVersion = s.getVersion();
+				version.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return the last published snapshot, which the REST interface reads instead of the terrarium itself
+	 */
+	@JsonbTransient
+	public TerrariumSnapshot getSnapshot() {
+		TerrariumSnapshot s = snapshot;
+		if ((s == null) || !commands.isStarted()) {
+			publish();
+			s = snapshot;
+		}
+		return s;
+	}
+
+	private TerrariumSnapshot takeSnapshot() {
+		// Before the initialization not everything is there yet
+		boolean[] lifecycleCounted = new boolean[this.deviceList.length];
+		for (int i = 0; i < Math.min(lifecycleCounted.length, Terrarium.devices.length); i++) {
+			lifecycleCounted[i] = (Terrarium.devices[i] != null) && Terrarium.devices[i].hasLifetime();
+		}
+		SensorSnapshot sens = this.lastSensors;
+		if (this.test) {
+			sens = new SensorSnapshot(System.currentTimeMillis(), getRoomTemperature() * 10, getTerrariumTemperature() * 10, getRoomHumidity() * 10,
+					SensorHistory.QUALITY_TEST);
+		}
+		return new TerrariumSnapshot(getVersion(), this.traceOn, this.deviceList, Terrarium.devStates, lifecycleCounted, this.timersPerDevice,
+				this.timers == null ? new Timer[0] : this.timers, this.rulesets, this.sprayerRule,
+				Terrarium.ruleActiveForDevice == null ? new int[0] : Terrarium.ruleActiveForDevice, this.sprayerRuleActive, this.test, sens);
+	}
+
+	/**
+	 * @return the queue for the changes from outside the control loop
+	 */
+	@JsonbTransient
+	public static CommandQueue getCommands() {
+		return commands;
+	}
+
+	/**
+	 * Execute the changes from outside the control loop. To be called by the control loop at the start of each tick.
+	 * The time is set first, since after a long sleep the time of the previous tick is far behind.
+	 */
+	@JsonbTransient
+	public void executeCommands(LocalDateTime now) {
+		setNow(now);
+		commands.drain();
+	}
+
+	/**
+	 * @return the changes for the clients of /events
+	 */
+	@JsonbTransient
+	public static StateEvents getEvents() {
+		return events;
+	}
+
+	@JsonbTransient
+	/**
+	 * Determine the first moment after now on which the control loop has something to do:
+	 * - the end of the on-period of a device
+	 * - the next on or off minute of an active timer
+	 * - the end of the delay of the sprayer rule
+	 * - the next minute, when the temperature is traced or a ruleset is active
+	 * - the rollover of the tracefiles
+	 * - the next whole hour
+	 *
+	 * @return deadline in Epoch-seconds
+	 */
+	public long getNextDeadline(LocalDateTime now) {
+		long nowSecs = Util.now(now);
+		long minuteStart = nowSecs - now.getSecond();
+		int curMinutes = (now.getHour() * 60) + now.getMinute();
+		// Next whole hour
+		long deadline = minuteStart + ((60 - now.getMinute()) * 60L);
+		// Temperature trace and rules are done every minute
+		if (this.traceOn || getRulePlan().hasEnabledRuleset()) {
+			deadline = minuteStart + 60;
+		}
+		if (this.traceOn) {
+			long rollover = this.traceStartTime + (1440 * 60);
+			// Round up to the whole minute
+			deadline = Math.min(deadline, rollover + ((60 - Math.floorMod(rollover, 60)) % 60));
+		}
+		// Timers
+		int minutes = getTimerPlan().minutesUntilNextEvent(curMinutes);
+		if (minutes != -1) {
+			deadline = Math.min(deadline, minuteStart + (minutes * 60L));
+		}
+		// Sprayer rule
+		if (this.sprayerRuleActive && (this.sprayerRuleDelayEndtime > curMinutes)) {
+			deadline = Math.min(deadline, minuteStart + ((this.sprayerRuleDelayEndtime - curMinutes) * 60L));
+		}
+		// Devices that are switched on for a period
+		deadline = Math.min(deadline, Terrarium.expiries.peekTime());
+		return Math.max(deadline, nowSecs + 1);
+	}
+
 	@JsonbTransient
 	public void init() {
 		// Count total number of timers
@@ -153,6 +342,7 @@ public class Terrarium {
 			nrOfTimers += i;
 		}
 		this.timers = new Timer[nrOfTimers];
+		this.timerPlan = null;
 		// Initialize Timers
 		int timerIndex = 0;
 		for (int i = 0; i < NR_OF_DEVICES; i++) {
@@ -182,6 +372,8 @@ public class Terrarium {
 				new Action("no device", 0)
 			}
 		);
+		this.rulePlan = null;
+		changed();
 		saveSettings();
 	}
 
@@ -214,20 +406,12 @@ public class Terrarium {
 	}
 
 
+	/**
+	 * @return the properties of the last published snapshot, so its JSON is built only once
+	 */
 	@JsonbTransient
 	public String getProperties() {
-		String json = "";
-		json += "{\"tcu\":\"TERRARIUMPI\",\"nr_of_timers\":" + this.timers.length + ",\"nr_of_programs\":" + NR_OF_RULESETS + ",";
-		json += "\"devices\": [";
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			json += "{\"device\":\"" + Terrarium.devices[i].getName() + "\", \"nr_of_timers\":" + this.timersPerDevice[i] + ", \"lc_counted\":";
-			json += (Terrarium.devices[i].hasLifetime() ? "true}" : "false}");
-			if (i != (NR_OF_DEVICES - 1)) {
-				json += ",";
-			}
-		}
-		json += "]}";
-		return json;
+		return getSnapshot().getPropertiesJson();
 	}
 
 	@JsonbTransient
@@ -259,7 +443,8 @@ public class Terrarium {
 
 	@JsonbTransient
 	public void setLifecycleCounter(String device, int value) {
-		Terrarium.devStates[getDeviceIndex(device)].setLifetime(value);
+		Terrarium.devStates[deviceId(device)].setLifetime(value);
+		changed();
 		saveLifecycleCounters();
 	}
 
@@ -270,16 +455,19 @@ public class Terrarium {
 			this.traceStartTime = Util.now(this.now);
 			traceStateFilename = Util.createStateTraceFile(traceFolder, this.now);
 			traceTempFilename  = Util.createTemperatureTraceFile(traceFolder, this.now);
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "start");
-			Util.traceTemperature(traceFolder + "/" + traceTempFilename, this.now, "start");
-			for (String d : this.deviceList) {
-				Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s %s", d, isDeviceOn(d) ? "1" : "0");
+			Util.traceStartStop(traceFolder + "/" + traceStateFilename, this.now, true);
+			Util.traceStartStop(traceFolder + "/" + traceTempFilename, this.now, true);
+			for (int i = 0; i < NR_OF_DEVICES; i++) {
+				Util.traceDevice(traceFolder + "/" + traceStateFilename, this.now, i, this.deviceList[i], Terrarium.devStates[i].getOnPeriod() != 0L, 0L);
 			}
 		} else if (this.traceOn) {
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "stop");
-			Util.traceTemperature(traceFolder + "/" + traceTempFilename, this.now, "stop");
+			Util.traceStartStop(traceFolder + "/" + traceStateFilename, this.now, false);
+			Util.traceStartStop(traceFolder + "/" + traceTempFilename, this.now, false);
 			this.traceOn = on;
 		}
+		changed();
+		events.traceChanged();
+		wakeUp();
 	}
 
 	@JsonbTransient
@@ -302,29 +490,113 @@ public class Terrarium {
 	@JsonbTransient
 	public void initSensors () {
 		this.sensors = new Sensors();
-		this.sensors.readSensorValues();
+		this.acquisition = new SensorAcquisition(this.sensors);
+		this.sensors.setValues(this.acquisition.latest());
+	}
+
+	/**
+	 * The sensors are read in the background from now on, see SensorAcquisition.
+	 */
+	@JsonbTransient
+	public void startSensorAcquisition() {
+		getSensorAcquisition().start();
+	}
+
+	@JsonbTransient
+	public SensorAcquisition getSensorAcquisition() {
+		if (this.acquisition == null) {
+			this.acquisition = new SensorAcquisition(this.sensors);
+		}
+		return this.acquisition;
 	}
 
+	/**
+	 * Take the latest sensor values and add them to the sensor history.
+	 * In test mode the values that were set are added.
+	 */
 	@JsonbTransient
 	public void readSensorValues() {
+		long time = epochNow();
 		if (!this.test) {
-			this.sensors.readSensorValues();
+			this.lastSensors = getSensorAcquisition().latest();
+			this.sensors.setValues(this.lastSensors);
+			this.sensorHistory.add(time, this.sensors.getRoomTenths(), this.sensors.getTerrariumTenths(), this.sensors.getHumidityTenths(),
+					this.lastSensors.getQuality());
+			getRollups().addSample(time, this.sensors.getRoomTenths(), this.sensors.getTerrariumTenths(), this.sensors.getHumidityTenths());
+			events.sensorsChanged(this.sensors.getRoomTenths(), this.sensors.getTerrariumTenths(), this.sensors.getHumidityTenths());
+		} else {
+			this.sensorHistory.add(time, getRoomTemperature() * 10, getTerrariumTemperature() * 10, getRoomHumidity() * 10, SensorHistory.QUALITY_TEST);
+			events.sensorsChanged(getRoomTemperature() * 10, getTerrariumTemperature() * 10, getRoomHumidity() * 10);
 		}
 	}
 
 	@JsonbTransient
-	public Sensors getSensors() {
-		if (!this.test) {
-			this.sensors.readSensorValues();
+	public SensorHistory getSensorHistory() {
+		return this.sensorHistory;
+	}
+
+	/**
+	 * The aggregates of the sensor values (not of test values) and of the device on-times.
+	 */
+	@JsonbTransient
+	public Rollups getRollups() {
+		if (this.rollups == null) {
+			this.rollups = new Rollups(NR_OF_DEVICES);
 		}
+		return this.rollups;
+	}
+
+	@JsonbTransient
+	public void loadRollups() {
+		try {
+			getRollups().load(Paths.get(rollupsFile));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Save the aggregates, including the on-time until now of the devices that are on.
+	 */
+	@JsonbTransient
+	public void saveRollups() {
+		try {
+			getRollups().checkpoint(epochNow());
+			getRollups().save(Paths.get(rollupsFile));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private long epochNow() {
+		return Util.now(this.now == null ? LocalDateTime.now() : this.now);
+	}
+
+	@JsonbTransient
+	public Sensors getSensors() {
 		return this.sensors;
 	}
 
+	/**
+	 * @param maxAgeMillis the maximum age of the values
+	 * @return the latest sensor values, or in test mode the values that were set
+	 */
+	@JsonbTransient
+	public SensorSnapshot getSensorSnapshot(long maxAgeMillis) {
+		TerrariumSnapshot s = getSnapshot();
+		if (s.isTest()) {
+			return s.getSensors();
+		}
+		return getSensorAcquisition().get(maxAgeMillis);
+	}
+
 	@JsonbTransient
 	public void setSensors(int troom, int tterrarium) {
 		this.test = true;
 		this.sensors.getSensors()[0].setTemperature(troom);
 		this.sensors.getSensors()[1].setTemperature(tterrarium);
+		changed();
+		wakeUp();
 	}
 
 	@JsonbTransient
@@ -337,11 +609,40 @@ public class Terrarium {
 		return this.sensors.getSensors()[0].getTemperature();
 	}
 
+	@JsonbTransient
+	public int getRoomHumidity() {
+		return this.sensors.getSensors()[0].getHumidity();
+	}
+
 	@JsonbTransient
 	public int getTerrariumTemperature() {
 		return this.sensors.getSensors()[1].getTemperature();
 	}
 
+	/**
+	 * @return the room temperature in tenths of degrees, in test mode the temperature that was set
+	 */
+	@JsonbTransient
+	public int getRoomTenths() {
+		return this.test ? getRoomTemperature() * 10 : this.sensors.getRoomTenths();
+	}
+
+	/**
+	 * @return the room humidity in tenths of percents, in test mode the last humidity that was read
+	 */
+	@JsonbTransient
+	public int getRoomHumidityTenths() {
+		return this.test ? getRoomHumidity() * 10 : this.sensors.getHumidityTenths();
+	}
+
+	/**
+	 * @return the terrarium temperature in tenths of degrees, in test mode the temperature that was set
+	 */
+	@JsonbTransient
+	public int getTerrariumTenths() {
+		return this.test ? getTerrariumTemperature() * 10 : this.sensors.getTerrariumTenths();
+	}
+
 
 	/********************************************* Timers *********************************************/
 
@@ -351,11 +652,13 @@ public class Terrarium {
 		if (device == "") {
 			tmrs = this.timers;
 		} else {
-			int nr = this.timersPerDevice[getDeviceIndex(device)];
-			tmrs = new Timer[nr];
+			int id = deviceId(device);
+			// Makes sure the timers have their device id
+			getTimerPlan();
+			tmrs = new Timer[this.timersPerDevice[id]];
 			int i = 0;
 			for (Timer t : this.timers) {
-				if (t.getDevice().equalsIgnoreCase(device)) {
+				if (t.getDeviceId() == id) {
 					tmrs[i] = t;
 					i++;
 				}
@@ -364,16 +667,48 @@ public class Terrarium {
 		return tmrs;
 	}
 
+	/**
+	 * Replace the timers with the same device and index.
+	 * A timer that does not exist yet is added to the timers of its device.
+	 *
+	 * @throws IllegalArgumentException if the device of a timer is unknown, no timer is replaced then
+	 */
 	@JsonbTransient
 	public void replaceTimers(Timer[] tmrs) {
+		TimerPlan plan = getTimerPlan();
+		resolveDevices(tmrs);
 		for (Timer tnew : tmrs) {
+			boolean found = false;
 			for (int i = 0; i < this.timers.length; i++) {
 				Timer told = this.timers[i];
-				if (told.getDevice().equalsIgnoreCase(tnew.getDevice()) && (told.getIndex() == tnew.getIndex())) {
+				if ((told.getDeviceId() == tnew.getDeviceId()) && (told.getIndex() == tnew.getIndex())) {
 					this.timers[i] = tnew;
+					plan.update(i, tnew);
+					found = true;
 				}
 			}
+			int dix = tnew.getDeviceId();
+			if (!found && (dix != DeviceRegistry.NO_DEVICE)) {
+				this.timers = Arrays.copyOf(this.timers, this.timers.length + 1);
+				this.timers[this.timers.length - 1] = tnew;
+				this.timersPerDevice[dix]++;
+				plan.update(this.timers.length - 1, tnew);
+			}
 		}
+		changed();
+		wakeUp();
+	}
+
+	/**
+	 * @return the timers compiled into a plan per minute of the day
+	 */
+	@JsonbTransient
+	public TimerPlan getTimerPlan() {
+		if (this.timerPlan == null) {
+			resolveDevices(this.timers);
+			this.timerPlan = new TimerPlan(this.timers);
+		}
+		return this.timerPlan;
 	}
 
 	@JsonbTransient
@@ -397,79 +732,70 @@ public class Terrarium {
 	 * because of a timer then the rule should not interfere, so the rule should be
 	 * deactivated until the device is switched off by the timer.
 	 * Then the rule should be activated again.
+	 *
+	 * Only the timer events of the current minute are taken from the timer plan.
 	 */
 	public void checkTimers() {
-		for (Timer t : this.timers) {
-			if (t.getRepeat() != 0) { // Timer is not active
-				if (t.getPeriod() == 0) { // Timer has an on and off
-					int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
-					int timerMinutesOff = (t.getHour_off() * 60) + t.getMinute_off();
-					int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
-					if (curMinutes == timerMinutesOn) {
-						System.out.println("Timer of device '" + t.getDevice() + "' has is a on/off timer and is " + (isDeviceOn(t.getDevice())? "on" : "off"));
-						if (!isDeviceOn(t.getDevice())) {
-							setDeviceOn(t.getDevice(), -1L);
-							System.out.println("Timer of device '" + t.getDevice() + " is switched " + (isDeviceOn(t.getDevice())? "on" : "off"));
-							if (t.getDevice().equalsIgnoreCase("mist")) {
-								this.fan_in_state = isDeviceOn("fan_in");
-								setDeviceOff("fan_in");
-								this.fan_out_state = isDeviceOn("fan_out");
-								setDeviceOff("fan_out");
-								// and deactivate the rules for fan_in and fan_out and switch them off
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							} else if (t.getDevice().equalsIgnoreCase("fan_in")) {
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							} else if (t.getDevice().equalsIgnoreCase("fan_out")) {
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							}
-						}
-					} else if ((timerMinutesOff != 0) && (curMinutes == timerMinutesOff)) {
-						if (t.getDevice().equalsIgnoreCase("mist")) {
-							setDeviceOff(t.getDevice());
-							System.out.println("Timer of device '" + t.getDevice() + " is switched " + (isDeviceOn(t.getDevice())? "on" : "off"));
-							if (this.fan_in_state) {
-								setDeviceOn("fan_in", -1L);
-								this.fan_in_state = false;
-							}
-							if (this.fan_out_state) {
-								setDeviceOn("fan_out", -1L);
-								this.fan_out_state = false;
-							}
-						} else {
-							setDeviceOff(t.getDevice());
-						}
-						// Make the rules of all relevant devices active again
-						for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
-							if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
-								setRuleActive(Terrarium.devices[i].getName(), 1);
-							}
-						}
+		int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
+		TimerPlan plan = getTimerPlan();
+		for (int event : plan.getEvents(curMinutes)) {
+			int tix = TimerPlan.getTimerIndex(event);
+			Timer t = this.timers[tix];
+			int ix = plan.getDevice(tix);
+			String device = this.deviceList[ix];
+			int flags = plan.getFlags(tix);
+			if (TimerPlan.isOffEvent(event)) {
+				if ((flags & TimerPlan.FLAG_MIST) != 0) {
+					switchOff(ix);
+					System.out.println("Timer of device '" + device + " is switched " + (isOn(ix)? "on" : "off"));
+					if (this.fan_in_state) {
+						switchOn(this.fanIn, -1L);
+						this.fan_in_state = false;
 					}
-				} else { // Timer has an on and period
-					int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
-					int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
-					long endtime = Util.now(this.now) + t.getPeriod();
-					if (curMinutes == timerMinutesOn) {
-						System.out.println("Timer of device '" + t.getDevice() + "' has a period=" + t.getPeriod() + " and is " + (isDeviceOn(t.getDevice())? "on" : "off"));
-						if (!isDeviceOn(t.getDevice())) {
-							setDeviceOn(t.getDevice(), endtime);
-						}
-						if (t.getDevice().equalsIgnoreCase("sprayer")) {
-							// If device is "sprayer" then activate sprayer rule
-							this.sprayerRuleActive = true;
-							// Set sprayerRuleDelayEndtime = start time in minutes + delay in minutes
-							this.sprayerRuleDelayEndtime = (t.getHour_on() * 60) + t.getMinute_on();
-							this.sprayerRuleDelayEndtime += this.sprayerRule.getDelay();
-							// and deactivate the rules for fan_in and fan_out and switch them off
-							setRuleActive("fan_in", 0);
-							setDeviceOff("fan_in");
-							setRuleActive("fan_out", 0);
-							setDeviceOff("fan_out");
-						}
+					if (this.fan_out_state) {
+						switchOn(this.fanOut, -1L);
+						this.fan_out_state = false;
 					}
+				} else {
+					switchOff(ix);
+				}
+				// Make the rules of all relevant devices active again
+				reactivateRules();
+			} else if (t.getPeriod() == 0) { // Timer has an on and off
+				System.out.println("Timer of device '" + device + "' has is a on/off timer and is " + (isOn(ix)? "on" : "off"));
+				if (!isOn(ix)) {
+					switchOn(ix, -1L);
+					System.out.println("Timer of device '" + device + " is switched " + (isOn(ix)? "on" : "off"));
+					if ((flags & TimerPlan.FLAG_MIST) != 0) {
+						this.fan_in_state = isOn(this.fanIn);
+						switchOff(this.fanIn);
+						this.fan_out_state = isOn(this.fanOut);
+						switchOff(this.fanOut);
+						// and deactivate the rules for fan_in and fan_out and switch them off
+						Terrarium.ruleActiveForDevice[this.fanIn] = 0;
+						Terrarium.ruleActiveForDevice[this.fanOut] = 0;
+					} else if ((flags & TimerPlan.FLAG_FAN) != 0) {
+						Terrarium.ruleActiveForDevice[this.fanIn] = 0;
+						Terrarium.ruleActiveForDevice[this.fanOut] = 0;
+					}
+				}
+			} else { // Timer has an on and period
+				long endtime = Util.now(this.now) + t.getPeriod();
+				System.out.println("Timer of device '" + device + "' has a period=" + t.getPeriod() + " and is " + (isOn(ix)? "on" : "off"));
+				if (!isOn(ix)) {
+					switchOn(ix, endtime);
+				}
+				if ((flags & TimerPlan.FLAG_SPRAYER) != 0) {
+					// If device is "sprayer" then activate sprayer rule
+					this.sprayerRuleActive = true;
+					// Set sprayerRuleDelayEndtime = start time in minutes + delay in minutes
+					this.sprayerRuleDelayEndtime = curMinutes;
+					this.sprayerRuleDelayEndtime += this.sprayerRule.getDelay();
+					// and deactivate the rules for fan_in and fan_out and switch them off
+					Terrarium.ruleActiveForDevice[this.fanIn] = 0;
+					switchOff(this.fanIn);
+					Terrarium.ruleActiveForDevice[this.fanOut] = 0;
+					switchOff(this.fanOut);
 				}
 			}
 		}
@@ -482,38 +808,74 @@ public class Terrarium {
 		return this.rulesets[nr - 1];
 	}
 
+	/**
+	 * @throws IllegalArgumentException if the device of an action is unknown, the ruleset is not replaced then
+	 */
 	@JsonbTransient
 	public void replaceRuleset(int nr, Ruleset ruleset) {
+		resolveDevices(ruleset);
 		this.rulesets[nr - 1] = ruleset;
+		this.rulePlan = null;
+		changed();
+		wakeUp();
+	}
+
+	/**
+	 * @return the rulesets and sprayer rule compiled into a rule plan
+	 */
+	@JsonbTransient
+	public RulePlan getRulePlan() {
+		RulePlan plan = this.rulePlan;
+		if (plan == null) {
+			for (Ruleset rs : this.rulesets) {
+				resolveDevices(rs);
+			}
+			if (this.sprayerRule != null) {
+				resolveDevices(this.sprayerRule.getActions());
+			}
+			plan = new RulePlan(this.rulesets, this.sprayerRule);
+			this.rulePlan = plan;
+		}
+		return plan;
 	}
 
 	@JsonbTransient
 	public int getRuleActive(String device) {
-		return Terrarium.ruleActiveForDevice[getDeviceIndex(device)];
+		return Terrarium.ruleActiveForDevice[deviceId(device)];
 	}
 
 	@JsonbTransient
 	public void setRuleActive(String device, int value) {
-		Terrarium.ruleActiveForDevice[getDeviceIndex(device)] = value;
+		Terrarium.ruleActiveForDevice[deviceId(device)] = value;
+	}
+
+	/**
+	 * Make the rules of all devices that were deactivated active again.
+	 */
+	private void reactivateRules() {
+		for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
+			if (Terrarium.ruleActiveForDevice[i] == 0) {
+				Terrarium.ruleActiveForDevice[i] = 1;
+			}
+		}
 	}
 
 	@JsonbTransient
 	public void initRules() {
 		// Register device as being under control of a rule
-		for (Ruleset rs : this.rulesets) {
-			if (rs.getActive().equalsIgnoreCase("yes")) {
-				for (Rule r : rs.getRules()) {
-					for (Action a : r.getActions()) {
-						if (!a.getDevice().equalsIgnoreCase("no device")) {
-							setRuleActive(a.getDevice(), 1);
-						}
+		RulePlan p = getRulePlan();
+		for (int rs = 0; rs < p.nrOfRulesets; rs++) {
+			if (p.enabled[rs]) {
+				for (int a = p.firstAction[p.firstRule[rs]]; a < p.firstAction[p.firstRule[rs + 1]]; a++) {
+					if (p.device[a] != RulePlan.NO_DEVICE) {
+						Terrarium.ruleActiveForDevice[p.device[a]] = 1;
 					}
 				}
 			}
 		}
-		for (Action a : this.sprayerRule.getActions()) {
-			if (!a.getDevice().equalsIgnoreCase("no device")) {
-				setRuleActive(a.getDevice(), 1);
+		for (int ix : p.sprayerDevice) {
+			if (ix != RulePlan.NO_DEVICE) {
+				Terrarium.ruleActiveForDevice[ix] = 1;
 			}
 		}
 	}
@@ -522,62 +884,67 @@ public class Terrarium {
 	/**
 	 * Execute the rules as defined in both rulesets.
 	 * These need to be executed every minute.
+	 *
+	 * The rules are evaluated from the rule plan, without allocating objects or comparing strings.
 	 */
 	public void checkRules() {
 		if (!isSprayerRuleActive()) {
-			for (Ruleset rs : this.rulesets) {
-				if (rs.active(this.now)) {
-					//
-					for (Rule r : rs.getRules()) {
-						if ((r.getValue() < 0) && (getTerrariumTemperature() < -r.getValue())) {
-							for (Action a : r.getActions()) {
-								executeAction(a);
-							}
-						} else if ((r.getValue() < 0) && (getTerrariumTemperature() >= rs.getIdealTemp())) {
-							for (Action a : r.getActions()) {
-								if (!a.getDevice().equalsIgnoreCase("no device") && isDeviceOn(a.getDevice()) && (getRuleActive(a.getDevice()) == 1)
-										&& (Terrarium.devStates[getDeviceIndex(a.getDevice())].getOnPeriod() != -1L)) {
-									setDeviceOff(a.getDevice());
-								}
+			RulePlan p = getRulePlan();
+			int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
+			int tterr = getTerrariumTemperature();
+			for (int rs = 0; rs < p.nrOfRulesets; rs++) {
+				if (p.isActive(rs, curMinutes)) {
+					for (int r = p.firstRule[rs]; r < p.firstRule[rs + 1]; r++) {
+						int value = p.value[r];
+						if ((value < 0) && (tterr < -value)) {
+							for (int a = p.firstAction[r]; a < p.firstAction[r + 1]; a++) {
+								executeAction(p.device[a], p.onPeriod[a]);
 							}
-						} else if ((r.getValue() > 0) && (getTerrariumTemperature() > r.getValue())) {
-							for (Action a : r.getActions()) {
-								executeAction(a);
-							}
-						} else if ((r.getValue() > 0) && (getTerrariumTemperature() <= rs.getIdealTemp())) {
-							for (Action a : r.getActions()) {
-								if (!a.getDevice().equalsIgnoreCase("no device") && isDeviceOn(a.getDevice()) && (getRuleActive(a.getDevice()) == 1)
-										&& (Terrarium.devStates[getDeviceIndex(a.getDevice())].getOnPeriod() != -1L)) {
-									setDeviceOff(a.getDevice());
-								}
+						} else if ((value < 0) && (tterr >= p.idealTemp[rs])) {
+							switchOffActions(p, r, true);
+						} else if ((value > 0) && (tterr > value)) {
+							for (int a = p.firstAction[r]; a < p.firstAction[r + 1]; a++) {
+								executeAction(p.device[a], p.onPeriod[a]);
 							}
+						} else if ((value > 0) && (tterr <= p.idealTemp[rs])) {
+							switchOffActions(p, r, true);
 						}
 					}
-				} else if (rs.getActive().equalsIgnoreCase("yes")) {
-					for (Rule r : rs.getRules()) {
-						for (Action a : r.getActions()) {
-							if (!a.getDevice().equalsIgnoreCase("no device") && isDeviceOn(a.getDevice()) && (getRuleActive(a.getDevice()) == 1)) {
-								setDeviceOff(a.getDevice());
-							}
-						}
+				} else if (p.enabled[rs]) {
+					for (int r = p.firstRule[rs]; r < p.firstRule[rs + 1]; r++) {
+						switchOffActions(p, r, false);
 					}
 				}
 			}
 		}
 	}
 
-	@JsonbTransient
-	private void executeAction(Action a) {
-		if (!a.getDevice().equalsIgnoreCase("no device") && ((getRuleActive(a.getDevice()) == 1) || isSprayerRuleActive())) {
+	/**
+	 * Switch off the devices of the actions of rule r that are on and under control of the rule.
+	 *
+	 * @param keepEndless if true then devices that are switched on endlessly are left on
+	 */
+	private void switchOffActions(RulePlan p, int r, boolean keepEndless) {
+		for (int a = p.firstAction[r]; a < p.firstAction[r + 1]; a++) {
+			int ix = p.device[a];
+			if ((ix != RulePlan.NO_DEVICE) && (Terrarium.devStates[ix].getOnPeriod() != 0L) && (Terrarium.ruleActiveForDevice[ix] == 1)
+					&& (!keepEndless || (Terrarium.devStates[ix].getOnPeriod() != -1L))) {
+				switchOff(ix);
+			}
+		}
+	}
+
+	private void executeAction(int ix, int onPeriod) {
+		if ((ix != RulePlan.NO_DEVICE) && ((Terrarium.ruleActiveForDevice[ix] == 1) || isSprayerRuleActive())) {
 			long endtime = 0;
-			if (a.getOnPeriod() > 0) {
+			if (onPeriod > 0) {
 				// onPeriod is seconds (max 3600)
-				endtime = Util.now(this.now) + a.getOnPeriod();
+				endtime = Util.now(this.now) + onPeriod;
 			} else {
-				endtime = a.getOnPeriod();
+				endtime = onPeriod;
 			}
-			if (!isDeviceOn(a.getDevice())) {
-				setDeviceOn(a.getDevice(), endtime);
+			if (Terrarium.devStates[ix].getOnPeriod() == 0L) {
+				switchOn(ix, endtime);
 			}
 		}
 	}
@@ -591,10 +958,9 @@ public class Terrarium {
 		if (this.sprayerRuleActive) {
 			int curminutes = (this.now.getHour() * 60) + this.now.getMinute();
 			if (curminutes == this.sprayerRuleDelayEndtime) {
-				for (Action a : this.sprayerRule.getActions()) {
-					if (!a.getDevice().equalsIgnoreCase("no device")) {
-						executeAction(a);
-					}
+				RulePlan p = getRulePlan();
+				for (int i = 0; i < p.sprayerDevice.length; i++) {
+					executeAction(p.sprayerDevice[i], p.sprayerOnPeriod[i]);
 				}
 				this.sprayerRuleActive = false;
 			}
@@ -614,11 +980,17 @@ public class Terrarium {
 		for (int i = 0; i< NR_OF_DEVICES; i++) {
 			Terrarium.devStates[i] = new DeviceState(this.deviceList[i]);
 		}
+		Terrarium.expiries = new ExpiryQueue(NR_OF_DEVICES);
+		changed();
 	}
 
 	@JsonbTransient
 	public boolean isDeviceOn(String device) {
-		return Terrarium.devStates[getDeviceIndex(device)].getOnPeriod() != 0L;
+		return isOn(deviceId(device));
+	}
+
+	private boolean isOn(int ix) {
+		return Terrarium.devStates[ix].getOnPeriod() != 0L;
 	}
 
 	/**
@@ -627,93 +999,149 @@ public class Terrarium {
 	 */
 	@JsonbTransient
 	public void setDeviceOn(String device, long endtime) {
-		Terrarium.devices[getDeviceIndex(device)].switchOn();
-		Terrarium.devStates[getDeviceIndex(device)].setOnPeriod(endtime);
+		switchOn(deviceId(device), endtime);
+	}
+
+	private void switchOn(int ix, long endtime) {
+		String device = this.deviceList[ix];
+		Terrarium.devices[ix].switchOn();
+		Terrarium.devStates[ix].setOnPeriod(endtime);
 		if (endtime > 0L) {
-			String dt = Util.ofEpochSecond(endtime).format(dtfmt);
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 1 %s", device, dt);
+			Terrarium.expiries.set(ix, endtime);
 		} else {
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 1 %d", device, endtime);
+			Terrarium.expiries.remove(ix);
 		}
+		Util.traceDevice(traceFolder + "/" + traceStateFilename, this.now, ix, device, true, endtime);
+		getRollups().deviceOn(ix, epochNow());
+		changed();
+		events.deviceChanged(ix);
+		wakeUp();
 	}
 
 	@JsonbTransient
 	public void setDeviceOff(String device) {
-		Terrarium.devices[getDeviceIndex(device)].switchOff();
-		Terrarium.devStates[getDeviceIndex(device)].setOnPeriod(ONPERIOD_OFF);
-		Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 0", device);
+		switchOff(deviceId(device));
+	}
+
+	private void switchOff(int ix) {
+		String device = this.deviceList[ix];
+		Terrarium.devices[ix].switchOff();
+		Terrarium.devStates[ix].setOnPeriod(ONPERIOD_OFF);
+		Terrarium.expiries.remove(ix);
+		Util.traceDevice(traceFolder + "/" + traceStateFilename, this.now, ix, device, false, 0L);
+		getRollups().deviceOff(ix, epochNow());
+		changed();
+		events.deviceChanged(ix);
+		wakeUp();
 	}
 
 	@JsonbTransient
 	public void setDeviceManualOn(String device) {
-		Terrarium.devStates[getDeviceIndex(device)].setManual(true);
+		int ix = deviceId(device);
+		Terrarium.devStates[ix].setManual(true);
+		changed();
+		events.deviceChanged(ix);
 	}
 
 	@JsonbTransient
 	public void setDeviceManualOff(String device) {
-		Terrarium.devStates[getDeviceIndex(device)].setManual(false);
+		int ix = deviceId(device);
+		Terrarium.devStates[ix].setManual(false);
+		changed();
+		events.deviceChanged(ix);
 	}
 
 	@JsonbTransient
 	public void setDeviceLifecycle(String device, int value) {
-		Terrarium.devStates[getDeviceIndex(device)].setLifetime(value);
+		Terrarium.devStates[deviceId(device)].setLifetime(value);
+		changed();
 	}
 
 	@JsonbTransient
 	public void decreaseLifetime(int nrOfHours) {
-		for (Device d : Terrarium.devices) {
-			if (d.hasLifetime()) {
-				Terrarium.devStates[getDeviceIndex(d.getName())].decreaseLifetime(nrOfHours);
+		for (int i = 0; i < NR_OF_DEVICES; i++) {
+			if (Terrarium.devices[i].hasLifetime()) {
+				Terrarium.devStates[i].decreaseLifetime(nrOfHours);
 				saveLifecycleCounters();
 			}
 		}
+		changed();
 	}
 
+	/**
+	 * @return the state of the last published snapshot, so its JSON is built only once
+	 */
 	@JsonbTransient
 	public String getState() {
-		String json = "{\"trace\":\"" +  (this.traceOn ? "on" : "off") + "\",\"state\": [";
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			json += Terrarium.devStates[i].toJson();
-			if (i != (NR_OF_DEVICES - 1)) {
-				json += ",";
-			}
-		}
-		json += "]}";
-		return json;
+		return getSnapshot().getStateJson();
 	}
 
+	/**
+	 * @return the index of the device in the device list or -1 if the device is unknown
+	 */
 	@JsonbTransient
 	public int getDeviceIndex(String device) {
-		int ix = -1;
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			if (this.deviceList[i].equalsIgnoreCase(device)) {
-				ix = i;
-				break;
-			}
+		return getRegistry().getId(device);
+	}
+
+	@JsonbTransient
+	public DeviceRegistry getRegistry() {
+		if (this.registry == null) {
+			this.registry = new DeviceRegistry(this.deviceList);
+			this.fanIn = deviceId("fan_in");
+			this.fanOut = deviceId("fan_out");
+		}
+		return this.registry;
+	}
+
+	private int deviceId(String device) {
+		int ix = getRegistry().getId(device);
+		if (ix == DeviceRegistry.NO_DEVICE) {
+			throw new IllegalArgumentException("Unknown device '" + device + "'");
 		}
 		return ix;
 	}
 
+	/**
+	 * Set the device id of the timers.
+	 *
+	 * @throws IllegalArgumentException if a device is unknown
+	 */
+	private void resolveDevices(Timer[] tmrs) {
+		for (Timer t : tmrs) {
+			t.setDeviceId(getRegistry().resolve(t.getDevice()));
+		}
+	}
+
+	/**
+	 * Set the device id of the actions of the ruleset.
+	 */
+	private void resolveDevices(Ruleset ruleset) {
+		for (Rule r : ruleset.getRules()) {
+			resolveDevices(r.getActions());
+		}
+	}
+
+	private void resolveDevices(Action[] actions) {
+		for (Action a : actions) {
+			a.setDeviceId(getRegistry().resolve(a.getDevice()));
+		}
+	}
+
 	@JsonbTransient
 	/**
 	 * Check if a device needs to be switched off when it has a onPeriod > 0
 	 * This check needs to be done every second since the onPeriod is defined in Epoch-seconds.
+	 * Only the devices of which the end time has been reached are taken from the expiry queue.
 	 */
 	public void checkDevices() {
-		for (DeviceState d : Terrarium.devStates) {
-			if (d.getOnPeriod() > 0) {
-				// Device has an end time defined
-				if (Util.now(this.now) >= d.getOnPeriod()) {
-					setDeviceOff(d.getName());
-					if (!isSprayerRuleActive()) {
-						// Make the rules of all relevant devices active again
-						for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
-							if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
-								setRuleActive(Terrarium.devices[i].getName(), 1);
-							}
-						}
-					}
-				}
+		long nowSecs = Util.now(this.now);
+		int ix;
+		while ((ix = Terrarium.expiries.pollExpired(nowSecs)) != -1) {
+			switchOff(ix);
+			if (!isSprayerRuleActive()) {
+				// Make the rules of all relevant devices active again
+				reactivateRules();
 			}
 		}
 	}
@@ -726,6 +1154,8 @@ public class Terrarium {
 
 	public void setTimers (Timer[] timers) {
 		this.timers = timers;
+		this.timerPlan = null;
+		changed();
 	}
 
 	public Ruleset[] getRulesets () {
@@ -734,6 +1164,8 @@ public class Terrarium {
 
 	public void setRulesets (Ruleset[] rulesets) {
 		this.rulesets = rulesets;
+		this.rulePlan = null;
+		changed();
 	}
 
 	public SprayerRule getSprayerRule () {
@@ -742,6 +1174,18 @@ public class Terrarium {
 
 	public void setSprayerRule (SprayerRule sprayerRule) {
 		this.sprayerRule = sprayerRule;
+		this.rulePlan = null;
+		changed();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the device of an action is unknown, the sprayer rule is not replaced then
+	 */
+	@JsonbTransient
+	public void replaceSprayerRule (SprayerRule sprayerRule) {
+		resolveDevices(sprayerRule.getActions());
+		setSprayerRule(sprayerRule);
+		wakeUp();
 	}
 
 	public DeviceState[] getDeviceStates() {
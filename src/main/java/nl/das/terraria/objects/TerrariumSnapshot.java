@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.util.Arrays;
+
+/**
+ * The state of the terrarium as published by the control loop at the end of a tick, see Terrarium.getSnapshot().
+ *
+ * A snapshot is never changed, so the REST interface reads a consistent state without locking:
+ * the device states are copies and the arrays are copies. The timers, rulesets and sprayer rule themselves
+ * are shared, they are replaced and not changed by the commands.
+ */
+public final class TerrariumSnapshot {
+
+	private final long version;
+	private final boolean traceOn;
+	private final String[] deviceList;
+	private final DeviceState[] deviceStates;
+	private final boolean[] lifecycleCounted;
+	private final int[] timersPerDevice;
+	private final Timer[] timers;
+	private final Ruleset[] rulesets;
+	private final SprayerRule sprayerRule;
+	private final int[] ruleActive;
+	private final boolean sprayerRuleActive;
+	private final boolean test;
+	private final SensorSnapshot sensors;
+	// Built on first use, a race only builds the same string twice
+	private String stateJson;
+	private String propertiesJson;
+
+	TerrariumSnapshot(long version, boolean traceOn, String[] deviceList, DeviceState[] deviceStates, boolean[] lifecycleCounted,
+			int[] timersPerDevice, Timer[] timers, Ruleset[] rulesets, SprayerRule sprayerRule, int[] ruleActive, boolean sprayerRuleActive,
+			boolean test, SensorSnapshot sensors) {
+		this.version = version;
+		this.traceOn = traceOn;
+		this.deviceList = deviceList.clone();
+		this.deviceStates = new DeviceState[deviceStates.length];
+		for (int i = 0; i < deviceStates.length; i++) {
+			// Before the initialization a device has no state yet
+			this.deviceStates[i] = deviceStates[i] == null ? new DeviceState(deviceList[i]) : new DeviceState(deviceStates[i]);
+		}
+		this.lifecycleCounted = lifecycleCounted;
+		this.timersPerDevice = timersPerDevice.clone();
+		this.timers = timers.clone();
+		this.rulesets = rulesets.clone();
+		this.sprayerRule = sprayerRule;
+		this.ruleActive = ruleActive.clone();
+		this.sprayerRuleActive = sprayerRuleActive;
+		this.test = test;
+		this.sensors = sensors;
+	}
+
+	public long getVersion() {
+		return this.version;
+	}
+
+	public boolean isTraceOn() {
+		return this.traceOn;
+	}
+
+	/**
+	 * @return the index of the device or -1 if the device is unknown
+	 */
+	public int getDeviceIndex(String device) {
+		for (int i = 0; i < this.deviceList.length; i++) {
+			if (this.deviceList[i].equalsIgnoreCase(device)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean isDeviceOn(String device) {
+		int ix = getDeviceIndex(device);
+		return (ix >= 0) && (this.deviceStates[ix].getOnPeriod() != 0L);
+	}
+
+	public long getOnPeriod(int ix) {
+		return this.deviceStates[ix].getOnPeriod();
+	}
+
+	public int getRuleActive(int ix) {
+		return this.ruleActive[ix];
+	}
+
+	boolean hasRuleActive(int[] ruleActive) {
+		return Arrays.equals(this.ruleActive, ruleActive == null ? new int[0] : ruleActive);
+	}
+
+	public boolean isSprayerRuleActive() {
+		return this.sprayerRuleActive;
+	}
+
+	public int getNrOfDevices() {
+		return this.deviceStates.length;
+	}
+
+	/**
+	 * Append the state of the device in the format of /state.
+	 */
+	public StringBuilder appendDeviceJson(int ix, StringBuilder sb) {
+		return this.deviceStates[ix].appendJson(sb);
+	}
+
+	public Timer[] getTimers() {
+		return this.timers.clone();
+	}
+
+	/**
+	 * @return the timers of the device, or all timers if device is ""
+	 */
+	public Timer[] getTimersForDevice(String device) {
+		if (device.isEmpty()) {
+			return getTimers();
+		}
+		return Arrays.stream(this.timers).filter(t -> t.getDevice().equalsIgnoreCase(device)).toArray(Timer[]::new);
+	}
+
+	public int getNrOfRulesets() {
+		return this.rulesets.length;
+	}
+
+	/**
+	 * @param nr 1 or 2
+	 */
+	public Ruleset getRuleset(int nr) {
+		return this.rulesets[nr - 1];
+	}
+
+	public SprayerRule getSprayerRule() {
+		return this.sprayerRule;
+	}
+
+	public boolean isTest() {
+		return this.test;
+	}
+
+	/**
+	 * @return the sensor values of the last tick in which they were read
+	 */
+	public SensorSnapshot getSensors() {
+		return this.sensors;
+	}
+
+	/**
+	 * @return the JSON of /state
+	 */
+	public String getStateJson() {
+		String json = this.stateJson;
+		if (json == null) {
+			StringBuilder sb = new StringBuilder(48 + (this.deviceStates.length * 100));
+			sb.append("{\"version\":").append(this.version).append(",\"trace\":\"").append(this.traceOn ? "on" : "off").append("\",\"state\": [");
+			for (int i = 0; i < this.deviceStates.length; i++) {
+				this.deviceStates[i].appendJson(sb);
+				if (i != (this.deviceStates.length - 1)) {
+					sb.append(',');
+				}
+			}
+			json = sb.append("]}").toString();
+			this.stateJson = json;
+		}
+		return json;
+	}
+
+	/**
+	 * @return the JSON of /properties
+	 */
+	public String getPropertiesJson() {
+		String json = this.propertiesJson;
+		if (json == null) {
+			StringBuilder sb = new StringBuilder(128 + (this.deviceList.length * 80));
+			sb.append("{\"tcu\":\"TERRARIUMPI\",\"nr_of_timers\":").append(this.timers.length).append(",\"nr_of_programs\":").append(this.rulesets.length).append(',');
+			sb.append("\"devices\": [");
+			for (int i = 0; i < this.deviceList.length; i++) {
+				sb.append("{\"device\":\"").append(this.deviceList[i]).append("\", \"nr_of_timers\":").append(this.timersPerDevice[i]).append(", \"lc_counted\":");
+				sb.append(this.lifecycleCounted[i] ? "true}" : "false}");
+				if (i != (this.deviceList.length - 1)) {
+					sb.append(',');
+				}
+			}
+			json = sb.append("]}").toString();
+			this.propertiesJson = json;
+		}
+		return json;
+	}
+}
@@ -8,6 +8,8 @@
 
 package nl.das.terraria.objects;
 
+import jakarta.json.bind.annotation.JsonbTransient;
+
 /**
  * {"device":"light1","index":1,"hour_on":9,"minute_on":0,"hour_off":21,"minute_off":0,"repeat":1,"period":0}
  */
@@ -21,6 +23,7 @@ public class Timer {
 	private int minute_off;
 	private int repeat;
 	private int period;
+	@JsonbTransient private int deviceId = DeviceRegistry.NO_DEVICE;
 
 	public Timer() { }
 
@@ -99,5 +102,17 @@ public class Timer {
 		this.period = period;
 	}
 
+	/**
+	 * @return the index of the device in the device list, set when the timer is added to the terrarium
+	 */
+	@JsonbTransient
+	public int getDeviceId () {
+		return this.deviceId;
+	}
+
+	@JsonbTransient
+	public void setDeviceId (int deviceId) {
+		this.deviceId = deviceId;
+	}
 
 }
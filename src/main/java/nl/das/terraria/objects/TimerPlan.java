@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.objects;
+
+import java.util.Arrays;
+
+/**
+ * The timers compiled into a day plan of 1440 minutes.
+ *
+ * For every minute of the day the plan holds the list of timer events in that minute.
+ * An event is the index of the timer in the timer array shifted left by one, with the
+ * lowest bit set for an off event. The events of a minute are sorted, so they are
+ * executed in the same order as the timers in the timer array.
+ * Only active timers (repeat != 0) of a known device (Timer.getDeviceId()) have events. A timer with a period only has an on event.
+ *
+ * The events of a minute are never changed in place, so a reader always sees
+ * either the old or the new list.
+ */
+public class TimerPlan {
+
+	public static final int MINUTES_PER_DAY = 1440;
+
+	public static final int FLAG_MIST    = 1;
+	public static final int FLAG_FAN     = 2;
+	public static final int FLAG_SPRAYER = 4;
+
+	private static final int[] NO_EVENTS = new int[0];
+
+	private int[][] slots = new int[MINUTES_PER_DAY][];
+	// Per timer
+	private int[] device = new int[0];
+	private int[] flags = new int[0];
+	private int[] onMinute = new int[0];
+	private int[] offMinute = new int[0];
+
+	public TimerPlan(Timer[] timers) {
+		Arrays.fill(this.slots, NO_EVENTS);
+		for (int i = 0; i < timers.length; i++) {
+			update(i, timers[i]);
+		}
+	}
+
+	/**
+	 * Replace the events of one timer.
+	 *
+	 * @param timerIndex index of the timer in the timer array
+	 * @param t the new timer
+	 */
+	public void update(int timerIndex, Timer t) {
+		if (timerIndex >= this.device.length) {
+			int n = Math.max(timerIndex + 1, this.device.length * 2);
+			int oldLength = this.device.length;
+			this.device = Arrays.copyOf(this.device, n);
+			this.flags = Arrays.copyOf(this.flags, n);
+			this.onMinute = Arrays.copyOf(this.onMinute, n);
+			this.offMinute = Arrays.copyOf(this.offMinute, n);
+			Arrays.fill(this.onMinute, oldLength, n, -1);
+			Arrays.fill(this.offMinute, oldLength, n, -1);
+		}
+		// Remove the events of the old timer
+		if (this.onMinute[timerIndex] != -1) {
+			removeEvent(this.onMinute[timerIndex], timerIndex << 1);
+		}
+		if (this.offMinute[timerIndex] != -1) {
+			removeEvent(this.offMinute[timerIndex], (timerIndex << 1) | 1);
+		}
+		this.device[timerIndex] = t.getDeviceId();
+		this.flags[timerIndex] = flagsOf(t.getDevice());
+		this.onMinute[timerIndex] = -1;
+		this.offMinute[timerIndex] = -1;
+		int on = (t.getHour_on() * 60) + t.getMinute_on();
+		int off = (t.getHour_off() * 60) + t.getMinute_off();
+		if ((t.getRepeat() == 0) || (this.device[timerIndex] == -1) || (on < 0) || (on >= MINUTES_PER_DAY)) {
+			// Timer is not active
+			return;
+		}
+		this.onMinute[timerIndex] = on;
+		addEvent(on, timerIndex << 1);
+		if ((t.getPeriod() == 0) && (off > 0) && (off < MINUTES_PER_DAY) && (off != on)) {
+			this.offMinute[timerIndex] = off;
+			addEvent(off, (timerIndex << 1) | 1);
+		}
+	}
+
+	/**
+	 * @return the events in the given minute of the day
+	 */
+	public int[] getEvents(int minute) {
+		return this.slots[minute];
+	}
+
+	public static int getTimerIndex(int event) {
+		return event >>> 1;
+	}
+
+	public static boolean isOffEvent(int event) {
+		return (event & 1) == 1;
+	}
+
+	public int getDevice(int timerIndex) {
+		return this.device[timerIndex];
+	}
+
+	public int getFlags(int timerIndex) {
+		return this.flags[timerIndex];
+	}
+
+	private static int flagsOf(String name) {
+		if (name.equalsIgnoreCase("mist")) {
+			return FLAG_MIST;
+		} else if (name.equalsIgnoreCase("fan_in") || name.equalsIgnoreCase("fan_out")) {
+			return FLAG_FAN;
+		} else if (name.equalsIgnoreCase("sprayer")) {
+			return FLAG_SPRAYER;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return number of minutes (1 - 1440) after curMinutes until the next minute with an event,
+	 *         or -1 if there are no events at all
+	 */
+	public int minutesUntilNextEvent(int curMinutes) {
+		for (int i = 1; i <= MINUTES_PER_DAY; i++) {
+			if (this.slots[(curMinutes + i) % MINUTES_PER_DAY].length > 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void addEvent(int minute, int event) {
+		int[] old = this.slots[minute];
+		int[] events = new int[old.length + 1];
+		int i = 0;
+		while ((i < old.length) && (old[i] < event)) {
+			events[i] = old[i];
+			i++;
+		}
+		events[i] = event;
+		System.arraycopy(old, i, events, i + 1, old.length - i);
+		this.slots[minute] = events;
+	}
+
+	private void removeEvent(int minute, int event) {
+		int[] old = this.slots[minute];
+		int i = Arrays.binarySearch(old, event);
+		if (i < 0) {
+			return;
+		}
+		if (old.length == 1) {
+			this.slots[minute] = NO_EVENTS;
+		} else {
+			int[] events = new int[old.length - 1];
+			System.arraycopy(old, 0, events, 0, i);
+			System.arraycopy(old, i + 1, events, i, old.length - i - 1);
+			this.slots[minute] = events;
+		}
+	}
+}
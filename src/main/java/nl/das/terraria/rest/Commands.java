@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.rest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jakarta.ws.rs.core.Response;
+import nl.das.terraria.objects.CommandQueue;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Executes a change of the terrarium by the control loop, see CommandQueue.
+ */
+class Commands {
+
+	private Commands() { }
+
+	/**
+	 * @return no content, or bad request with the message if the command threw an IllegalArgumentException.
+	 *         If the control loop does not execute the command in time, it is cancelled and not executed anymore.
+	 */
+	static Response execute(Runnable command) {
+		CompletableFuture<Void> result = Terrarium.getCommands().submit(command);
+		try {
+			try {
+				result.get(CommandQueue.timeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (result.cancel(false)) {
+					return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("The control loop does not respond").build();
+				}
+				// The control loop started the command just now, so it could not be cancelled
+				result.get();
+			}
+			return Response.noContent().build();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IllegalArgumentException) {
+				return Response.status(Response.Status.BAD_REQUEST).entity(e.getCause().getMessage()).build();
+			}
+			e.getCause().printStackTrace();
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result.cancel(false);
+			return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+		}
+	}
+}
@@ -10,69 +10,127 @@
 package nl.das.terraria.rest;
 
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Response;
 import nl.das.terraria.Util;
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.TerrariumSnapshot;
 
 /**
  *
  */
 public class DeviceState {
 
+	static final int MAX_WAIT_SECONDS = 60;
+	/**
+	 * Each waiting request holds a worker thread, so only this many requests may wait at the same time.
+	 * The others return immediately, as a poll.
+	 */
+	static final int MAX_WAITING = 8;
+
+	private static final AtomicInteger waiting = new AtomicInteger();
+
+	/**
+	 * The state with its version. With since and wait it is a long poll: if the version is not
+	 * beyond since, the request waits at most wait (seconds or with the unit s or m, max 60 seconds) for a change.
+	 *
+	 * @param since the version of the state the client has
+	 * @param wait  the maximum time to wait
+	 */
 	@GET
 	@Path("/state")
 	@Produces("application/json")
-	public String getState() {
-		return Terrarium.getInstance().getState();
+	public Response getState(@QueryParam("since") @DefaultValue("-1") long since, @QueryParam("wait") @DefaultValue("0") String wait,
+			@HeaderParam("If-None-Match") String ifNoneMatch) {
+		if ((since >= 0) && (Terrarium.getInstance().getSnapshot().getVersion() <= since)) {
+			long seconds;
+			try {
+				seconds = Math.min(Sensors.parsePeriod(wait), MAX_WAIT_SECONDS);
+			} catch (NumberFormatException e) {
+				return Response.status(Response.Status.BAD_REQUEST).entity("Invalid wait " + wait).build();
+			}
+			if (seconds > 0) {
+				try {
+					if (waiting.incrementAndGet() <= MAX_WAITING) {
+						Terrarium.awaitVersion(since, seconds * 1000);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					waiting.decrementAndGet();
+				}
+			}
+		}
+		return ResponseCache.get("state", ifNoneMatch, TerrariumSnapshot::getStateJson);
 	}
 
 	@PUT
 	@Path("/device/{device}/on")
 	public Response setDeviceOn(@PathParam("device") String device) {
-		Terrarium.getInstance().setDeviceOn(device, -1);
-		return Response.noContent().build();
+		if (isUnknown(device)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return Commands.execute(() -> Terrarium.getInstance().setDeviceOn(device, -1));
 	}
 
 	@PUT
 	@Path("/device/{device}/on/{period}")
 	public Response setDeviceOn(@PathParam("device") String device, @PathParam("period") int period) {
+		if (isUnknown(device)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
 		// period is in seconds (max 3600) so convert it to an endtime in Epoch seconds
-		Terrarium.getInstance().setDeviceOn(device, Util.now(LocalDateTime.now()) + period);
-		return Response.noContent().build();
+		long endtime = Util.now(LocalDateTime.now()) + period;
+		return Commands.execute(() -> Terrarium.getInstance().setDeviceOn(device, endtime));
 	}
 
 	@PUT
 	@Path("/device/{device}/off")
 	public Response setDeviceOff(@PathParam("device") String device) {
-		Terrarium.getInstance().setDeviceOff(device);
-		return Response.noContent().build();
+		if (isUnknown(device)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return Commands.execute(() -> Terrarium.getInstance().setDeviceOff(device));
 	}
 
 	@PUT
 	@Path("/device/{device}/manual")
 	public Response setDeviceManual(@PathParam("device") String device) {
-		Terrarium.getInstance().setDeviceManualOn(device);
-		return Response.noContent().build();
+		if (isUnknown(device)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return Commands.execute(() -> Terrarium.getInstance().setDeviceManualOn(device));
 	}
 
 	@PUT
 	@Path("/device/{device}/auto")
 	public Response setDeviceAuto(@PathParam("device") String device) {
-		Terrarium.getInstance().setDeviceManualOff(device);
-		return Response.noContent().build();
+		if (isUnknown(device)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return Commands.execute(() -> Terrarium.getInstance().setDeviceManualOff(device));
 	}
 
 	@POST
 	@Path("/counter/{device}/{value}")
 	public Response setLifecycleCounter(@PathParam("device") String device, @PathParam("value") int value) {
-		Terrarium.getInstance().setLifecycleCounter(device, value);
-		return Response.noContent().build();
+		if (isUnknown(device)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return Commands.execute(() -> Terrarium.getInstance().setLifecycleCounter(device, value));
+	}
+
+	private static boolean isUnknown(String device) {
+		return Terrarium.getInstance().getSnapshot().getDeviceIndex(device) == -1;
 	}
 }
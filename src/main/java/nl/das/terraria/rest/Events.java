@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import nl.das.terraria.objects.StateEvents;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Server-Sent Events stream of the changes, instead of polling /state.
+ *
+ * The stream starts with a "state" event with the whole /state. Then a "change" event
+ * is sent for each tick in which something has changed, see StateEvents.
+ * A "dropped" event tells the client that it was too slow and missed changes, it should get /state again.
+ */
+@Path("/events")
+public class Events {
+
+	static final long KEEP_ALIVE_MILLIS = 15000;
+
+	@GET
+	@Produces("text/event-stream")
+	public Response getEvents() {
+		if (Terrarium.getEvents().getNrOfSubscribers() >= StateEvents.maxNrOfSubscribers) {
+			return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Too many clients").build();
+		}
+		StreamingOutput stream = out -> {
+			// Subscribe only when streaming, so a client that is gone before does not stay subscribed
+			StateEvents.Subscriber s = Terrarium.getEvents().subscribe();
+			if (s == null) {
+				return;
+			}
+			try {
+				write(out, "retry: 5000\n");
+				write(out, "event: state\ndata: " + Terrarium.getInstance().getSnapshot().getStateJson() + "\n\n");
+				long dropped = 0;
+				while (true) {
+					String e = s.take(KEEP_ALIVE_MILLIS);
+					if (s.getNrOfDropped() != dropped) {
+						dropped = s.getNrOfDropped();
+						write(out, "event: dropped\ndata: {\"dropped\":" + dropped + "}\n\n");
+					}
+					// A comment to detect clients that are gone
+					write(out, e == null ? ":\n\n" : "event: change\ndata: " + e + "\n\n");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				Terrarium.getEvents().unsubscribe(s);
+			}
+		};
+		return Response.ok(stream)
+			.type("text/event-stream")
+			.header("Cache-Control", "no-cache")
+			.header("X-Accel-Buffering", "no")
+			.build();
+	}
+
+	private static void write(OutputStream out, String s) throws IOException {
+		out.write(s.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+}
@@ -9,17 +9,22 @@
 package nl.das.terraria.rest;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Response;
 import nl.das.terraria.Util;
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.trace.TemperatureHistory;
 
 /**
  *
@@ -27,17 +32,40 @@ import nl.das.terraria.objects.Terrarium;
 @Path("/history")
 public class History {
 
+	/**
+	 * Without from and to the list of temperature tracefiles.
+	 * With from and/or to the temperatures of that range in at most points buckets, see TemperatureHistory.toJson().
+	 *
+	 * @param from Epoch-seconds or yyyy-MM-ddTHH:mm[:ss], default 24 hours before to
+	 * @param to   Epoch-seconds or yyyy-MM-ddTHH:mm[:ss], default now
+	 */
 	@GET
 	@Path("/temperature")
 	@Produces("application/json")
-	public List<String> getTempTracefiles() {
-		List<String> files = new ArrayList<>();
+	public Response getTempTracefiles(@QueryParam("from") String from, @QueryParam("to") String to,
+			@QueryParam("points") @DefaultValue("200") int points) {
+		if ((from == null) && (to == null)) {
+			List<String> files = new ArrayList<>();
+			try {
+				files = Util.listTraceFiles(Terrarium.traceFolder, "temp_");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return Response.ok(files).build();
+		}
 		try {
-			files = Util.listTraceFiles(Terrarium.traceFolder, "temp_");
+			long t = (to == null) ? Util.now(LocalDateTime.now()) : parseTime(to);
+			long f = (from == null) ? t - (24 * 3600) : parseTime(from);
+			if ((f > t) || (points < 1)) {
+				return Response.status(Response.Status.BAD_REQUEST).entity("Invalid range").build();
+			}
+			return Response.ok(TemperatureHistory.read(Terrarium.traceFolder, f, t, points).toJson()).build();
+		} catch (DateTimeParseException | NumberFormatException e) {
+			return Response.status(Response.Status.BAD_REQUEST).entity("Invalid time " + e.getMessage()).build();
 		} catch (IOException e) {
 			e.printStackTrace();
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
 		}
-		return files;
 	}
 
 	@GET
@@ -53,29 +81,51 @@ public class History {
 		return files;
 	}
 
+	/**
+	 * The tracefile is streamed, supports a byte range and, for a past day, caching.
+	 */
 	@GET
 	@Path("/temperature/{fname}")
 	@Produces("text/plain")
-	public String getTemperatureFile (@PathParam("fname") String fname) {
-		String content = "";
-		try {
-			content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + fname));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return content;
+	public Response getTemperatureFile (@PathParam("fname") String fname, @HeaderParam("Range") String range,
+			@HeaderParam("If-None-Match") String ifNoneMatch) {
+		return TracefileDownload.build("temp_", fname, range, ifNoneMatch);
 	}
 
+	/**
+	 * The tracefile is streamed, supports a byte range and, for a past day, caching.
+	 */
 	@GET
 	@Path("/state/{fname}")
 	@Produces("text/plain")
-	public String getStateFile (@PathParam("fname") String fname) {
-		String content = "";
-		try {
-			content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + fname));
-		} catch (IOException e) {
-			e.printStackTrace();
+	public Response getStateFile (@PathParam("fname") String fname, @HeaderParam("Range") String range,
+			@HeaderParam("If-None-Match") String ifNoneMatch) {
+		return TracefileDownload.build("state_", fname, range, ifNoneMatch);
+	}
+
+	/**
+	 * The lines that were added to the tracefile after offset and the new offset in the X-Trace-Offset header.
+	 * With wait > 0 the request waits at most wait seconds (max 60) for new lines.
+	 *
+	 * @param kind "temperature" or "state"
+	 */
+	@GET
+	@Path("/{kind}/{fname}/tail")
+	@Produces("text/plain")
+	public Response getTail (@PathParam("kind") String kind, @PathParam("fname") String fname,
+			@QueryParam("offset") @DefaultValue("0") long offset, @QueryParam("wait") @DefaultValue("0") int wait) {
+		if (kind.equals("temperature")) {
+			return TracefileDownload.tail("temp_", fname, offset, wait);
+		} else if (kind.equals("state")) {
+			return TracefileDownload.tail("state_", fname, offset, wait);
+		}
+		return Response.status(Response.Status.NOT_FOUND).build();
+	}
+
+	private static long parseTime(String time) {
+		if (time.matches("[0-9]+")) {
+			return Long.parseLong(time);
 		}
-		return content;
+		return Util.now(LocalDateTime.parse(time));
 	}
 }
@@ -12,12 +12,15 @@ package nl.das.terraria.rest;
 import java.time.LocalDateTime;
 
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.Response;
 import nl.das.terraria.Util;
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.TerrariumSnapshot;
+import nl.das.terraria.trace.TraceWriter;
 
 /**
  *
@@ -28,32 +31,42 @@ public class Properties {
 	@GET
 	@Path("/properties")
 	@Produces("application/json")
-	public String getProperties() {
-		return Terrarium.getInstance().getProperties();
+	public Response getProperties(@HeaderParam("If-None-Match") String ifNoneMatch) {
+		return ResponseCache.get("properties", ifNoneMatch, TerrariumSnapshot::getPropertiesJson);
+	}
+
+	@GET
+	@Path("/trace/stats")
+	@Produces("application/json")
+	public String getTraceStats() {
+		TraceWriter w = TraceWriter.getInstance();
+		return "{\"queue_depth\":" + w.getQueueDepth() + ",\"dropped\":" + w.getDroppedRecords() + ",\"written\":" + w.getWrittenRecords() + "}";
 	}
 
 	@POST
 	@Path("/trace/on")
 	@Produces("application/json")
 	public Response setTraceOn() {
-		Terrarium t = Terrarium.getInstance();
-		t.setNow(LocalDateTime.now());
-		t.setTrace(true);
-		Util.traceState(Terrarium.traceFolder, LocalDateTime.now(), "start");
-		Util.traceTemperature(Terrarium.traceFolder, LocalDateTime.now(), "start");
-		for (String d : t.deviceList) {
-			Util.traceState(Terrarium.traceFolder, LocalDateTime.now(), "%s %s", d, t.isDeviceOn(d) ? "1" : "0");
-		}
-		return Response.noContent().build();
+		return Commands.execute(() -> {
+			Terrarium t = Terrarium.getInstance();
+			t.setNow(LocalDateTime.now());
+			t.setTrace(true);
+			Util.traceState(Terrarium.traceFolder, LocalDateTime.now(), "start");
+			Util.traceTemperature(Terrarium.traceFolder, LocalDateTime.now(), "start");
+			for (String d : t.deviceList) {
+				Util.traceState(Terrarium.traceFolder, LocalDateTime.now(), "%s %s", d, t.isDeviceOn(d) ? "1" : "0");
+			}
+		});
 	}
 
 	@POST
 	@Path("/trace/off")
 	@Produces("application/json")
 	public Response setTraceOff() {
-		Util.traceState(Terrarium.traceFolder, LocalDateTime.now(), "stop");
-		Util.traceTemperature(Terrarium.traceFolder, LocalDateTime.now(), "stop");
-		Terrarium.getInstance().setTrace(false);
-		return Response.noContent().build();
+		return Commands.execute(() -> {
+			Util.traceState(Terrarium.traceFolder, LocalDateTime.now(), "stop");
+			Util.traceTemperature(Terrarium.traceFolder, LocalDateTime.now(), "stop");
+			Terrarium.getInstance().setTrace(false);
+		});
 	}
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.TerrariumSnapshot;
+
+/**
+ * The serialized responses of the endpoints that are polled, by endpoint.
+ *
+ * A response is serialized once per version of the published snapshot (see Terrarium.getSnapshot()) and kept as UTF-8 bytes
+ * with a strong ETag of its content. A poll with the ETag in If-None-Match gets 304 Not Modified,
+ * so for most polls only the version and the ETag are compared.
+ */
+class ResponseCache {
+
+	private static final String CACHE_CONTROL = "no-cache";
+	private static final Jsonb jsonb = JsonbBuilder.create();
+	private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private ResponseCache() { }
+
+	/**
+	 * @param key         the endpoint
+	 * @param ifNoneMatch value of the If-None-Match header or null
+	 * @param json        builds the JSON of the endpoint from the snapshot
+	 */
+	static Response get(String key, String ifNoneMatch, Function<TerrariumSnapshot, String> json) {
+		TerrariumSnapshot s = Terrarium.getInstance().getSnapshot();
+		Entry e = entries.get(key);
+		if ((e == null) || (e.version != s.getVersion())) {
+			e = new Entry(s.getVersion(), json.apply(s));
+			entries.put(key, e);
+		}
+		if (matches(ifNoneMatch, e.quotedTag)) {
+			return Response.notModified(e.etag).header("Cache-Control", CACHE_CONTROL).build();
+		}
+		byte[] content = e.content;
+		return Response.ok((StreamingOutput) out -> out.write(content))
+			.type("application/json")
+			.header("Content-Length", content.length)
+			.tag(e.etag)
+			.header("Cache-Control", CACHE_CONTROL)
+			.build();
+	}
+
+	/**
+	 * The cached response of an object that is serialized with JSON-B.
+	 */
+	static Response getObject(String key, String ifNoneMatch, Function<TerrariumSnapshot, Object> object) {
+		return get(key, ifNoneMatch, s -> jsonb.toJson(object.apply(s)));
+	}
+
+	private static boolean matches(String ifNoneMatch, String quotedTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		return (ifNoneMatch.indexOf(quotedTag) >= 0) || ifNoneMatch.trim().equals("*");
+	}
+
+	private static final class Entry {
+		final long version;
+		final byte[] content;
+		final EntityTag etag;
+		final String quotedTag;
+
+		Entry(long version, String json) {
+			this.version = version;
+			this.content = json.getBytes(StandardCharsets.UTF_8);
+			CRC32 crc = new CRC32();
+			crc.update(this.content);
+			this.etag = new EntityTag(Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(this.content.length));
+			this.quotedTag = "\"" + this.etag.getValue() + "\"";
+		}
+	}
+}
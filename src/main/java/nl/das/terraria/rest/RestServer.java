@@ -31,6 +31,8 @@ public class RestServer extends Minijax {
 		super.register(DeviceState.class);
 		super.register(Properties.class);
 		super.register(History.class);
+		super.register(Stats.class);
+		super.register(Events.class);
 	}
 
 
@@ -11,6 +11,7 @@ package nl.das.terraria.rest;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
@@ -28,17 +29,21 @@ public class Rulesets {
 	@GET
 	@Path("/{nr}")
 	@Produces("application/json")
-	public Ruleset getRuleset(@PathParam("nr") int nr) {
-		return Terrarium.getInstance().getRuleset(nr);
+	public Response getRuleset(@PathParam("nr") int nr, @HeaderParam("If-None-Match") String ifNoneMatch) {
+		if ((nr < 1) || (nr > Terrarium.getInstance().getSnapshot().getNrOfRulesets())) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return ResponseCache.getObject("ruleset/" + nr, ifNoneMatch, s -> s.getRuleset(nr));
 	}
 
 	@PUT
 	@Path("/{nr}")
 	@Consumes("application/json")
 	public Response saveRuleset(@PathParam("nr") int nr, Ruleset ruleset) {
-		Terrarium.getInstance().replaceRuleset(nr, ruleset);
-		Terrarium.getInstance().saveSettings();
-		return Response.noContent().build();
+		return Commands.execute(() -> {
+			Terrarium.getInstance().replaceRuleset(nr, ruleset);
+			Terrarium.getInstance().saveSettings();
+		});
 	}
 
 }
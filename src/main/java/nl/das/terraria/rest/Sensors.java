@@ -9,12 +9,20 @@
 
 package nl.das.terraria.rest;
 
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Response;
+import nl.das.terraria.Util;
+import nl.das.terraria.hw.DHT22;
+import nl.das.terraria.hw.DS18B20;
 import nl.das.terraria.objects.Terrarium;
 
 /**
@@ -23,23 +31,92 @@ import nl.das.terraria.objects.Terrarium;
 @Path("/sensors")
 public class Sensors {
 
+	/**
+	 * The latest sensor values, see SensorSnapshot.toJson(). The sensors are not read on this thread.
+	 *
+	 * @param maxAge the maximum age of the values in seconds, if they are older the sensors are read again
+	 */
+	@GET
+	@Produces("application/json")
+	public String getSensorReadings(@QueryParam("maxAge") @DefaultValue("-1") int maxAge) {
+		return Terrarium.getInstance().getSensorSnapshot(maxAge < 0 ? Long.MAX_VALUE : maxAge * 1000L).toJson();
+	}
+
+	/**
+	 * The samples of the last period from the sensor history, see SensorHistory.Snapshot.toJson().
+	 *
+	 * @param last number of seconds, or a number followed by s, m, h or d
+	 */
 	@GET
+	@Path("/history")
 	@Produces("application/json")
-	public nl.das.terraria.objects.Sensors getSensorReadings() {
-		return Terrarium.getInstance().getSensors();
+	public Response getSensorHistory(@QueryParam("last") @DefaultValue("1h") String last) {
+		long seconds;
+		try {
+			seconds = parsePeriod(last);
+		} catch (NumberFormatException e) {
+			return Response.status(Response.Status.BAD_REQUEST).entity("Invalid period " + last).build();
+		}
+		long from = Util.now(LocalDateTime.now()) - seconds;
+		return Response.ok(Terrarium.getInstance().getSensorHistory().since(from).toJson()).build();
+	}
+
+	/**
+	 * The statistics of the reads of the room sensor (DHT22) and the temperatures of the terrarium probes (DS18B20).
+	 */
+	@GET
+	@Path("/stats")
+	@Produces("application/json")
+	public String getSensorStats() {
+		DHT22 dht = Terrarium.getInstance().getSensors().getRoomSensor();
+		DS18B20 ds = Terrarium.getInstance().getSensors().getTerrariumSensor();
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"reads\":").append(dht.getNrOfReads()).append(",\"parity_failures\":").append(dht.getNrOfParityFailures())
+			.append(",\"out_of_range\":").append(dht.getNrOfOutOfRange()).append(",\"timeouts\":").append(dht.getNrOfTimeouts())
+			.append(",\"probe_failures\":").append(ds.getNrOfFailures()).append(",\"probes\":{");
+		String sep = "";
+		for (Map.Entry<String, Double> e : ds.getTemperatures().entrySet()) {
+			sb.append(sep).append('"').append(e.getKey()).append("\":").append(e.getValue().isNaN() ? "null" : e.getValue().toString());
+			sep = ",";
+		}
+		return sb.append("}}").toString();
 	}
 
 	@POST
 	@Path("/{tr}/{tt}")
 	public Response setSensorValues(@PathParam("tr") int tr, @PathParam("tt") int tt) {
-		Terrarium.getInstance().setSensors(tr, tt);
-		return Response.noContent().build();
+		return Commands.execute(() -> Terrarium.getInstance().setSensors(tr, tt));
 	}
 
 	@POST
 	@Path("/auto")
 	public Response setSensors() {
-		Terrarium.getInstance().setTestOff();
-		return Response.noContent().build();
+		return Commands.execute(() -> Terrarium.getInstance().setTestOff());
+	}
+
+	/**
+	 * @param period seconds, or a number with the unit s, m, h or d
+	 * @return the period in seconds
+	 * @throws NumberFormatException if the period is invalid
+	 */
+	static long parsePeriod(String period) {
+		String p = period.trim();
+		long unit = 1;
+		switch (p.isEmpty() ? ' ' : p.charAt(p.length() - 1)) {
+		case 's':
+			break;
+		case 'm':
+			unit = 60;
+			break;
+		case 'h':
+			unit = 3600;
+			break;
+		case 'd':
+			unit = 86400;
+			break;
+		default:
+			return Long.parseLong(p);
+		}
+		return Long.parseLong(p.substring(0, p.length() - 1)) * unit;
 	}
 }
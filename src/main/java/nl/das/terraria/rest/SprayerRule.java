@@ -11,11 +11,13 @@ package nl.das.terraria.rest;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.Response;
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.TerrariumSnapshot;
 
 /**
  *
@@ -25,16 +27,17 @@ public class SprayerRule {
 
 	@GET
 	@Produces("application/json")
-	public nl.das.terraria.objects.SprayerRule getSprayerRule() {
-		return Terrarium.getInstance().getSprayerRule();
+	public Response getSprayerRule(@HeaderParam("If-None-Match") String ifNoneMatch) {
+		return ResponseCache.getObject("sprayerrule", ifNoneMatch, TerrariumSnapshot::getSprayerRule);
 	}
 
 	@PUT
 	@Consumes("application/json")
 	public Response replaceSprayerRule(nl.das.terraria.objects.SprayerRule sprayerRule) {
-		Terrarium.getInstance().setSprayerRule(sprayerRule);
-		Terrarium.getInstance().saveSettings();
-		return Response.noContent().build();
+		return Commands.execute(() -> {
+			Terrarium.getInstance().replaceSprayerRule(sprayerRule);
+			Terrarium.getInstance().saveSettings();
+		});
 	}
 }
 
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.rest;
+
+import java.time.LocalDateTime;
+
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Response;
+import nl.das.terraria.Util;
+import nl.das.terraria.objects.Rollups;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Statistics from the running aggregates, the temperatures and humidity are in tenths.
+ */
+@Path("/stats")
+public class Stats {
+
+	private static final String[] METRICS = {"room", "terrarium", "humidity"};
+
+	/**
+	 * Today and the last 7 days: min, max and avg of the sensor values and the on-seconds per device.
+	 */
+	@GET
+	@Produces("application/json")
+	public String getStats() {
+		Terrarium terrarium = Terrarium.getInstance();
+		Rollups r = terrarium.getRollups();
+		long now = Util.now(LocalDateTime.now());
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append("{\"time\":").append(now).append(",\"today\":{");
+		for (int m = 0; m < Rollups.NR_OF_METRICS; m++) {
+			sb.append(m == 0 ? "\"" : ",\"").append(METRICS[m]).append("\":{\"min\":").append(r.getMin(Rollups.DAY, now, m))
+				.append(",\"max\":").append(r.getMax(Rollups.DAY, now, m))
+				.append(",\"avg\":").append(r.getAvg(Rollups.DAY, now, m)).append('}');
+		}
+		sb.append(",\"on_seconds\":{");
+		for (int d = 0; d < terrarium.deviceList.length; d++) {
+			sb.append(d == 0 ? "\"" : ",\"").append(terrarium.deviceList[d]).append("\":").append(r.getOnSeconds(Rollups.DAY, now, d, now));
+		}
+		sb.append("}},\"week\":{");
+		for (int m = 0; m < Rollups.NR_OF_METRICS; m++) {
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for (int day = 0; day < 7; day++) {
+				long t = now - (day * 86400L);
+				if (r.getCount(Rollups.DAY, t) > 0) {
+					min = Math.min(min, r.getMin(Rollups.DAY, t, m));
+					max = Math.max(max, r.getMax(Rollups.DAY, t, m));
+				}
+			}
+			sb.append(m == 0 ? "\"" : ",\"").append(METRICS[m]).append("\":{\"min\":").append(min == Integer.MAX_VALUE ? 0 : min)
+				.append(",\"max\":").append(max == Integer.MIN_VALUE ? 0 : max).append('}');
+		}
+		sb.append(",\"on_seconds\":{");
+		for (int d = 0; d < terrarium.deviceList.length; d++) {
+			long secs = 0;
+			for (int day = 0; day < 7; day++) {
+				secs += r.getOnSeconds(Rollups.DAY, now - (day * 86400L), d, now);
+			}
+			sb.append(d == 0 ? "\"" : ",\"").append(terrarium.deviceList[d]).append("\":").append(secs);
+		}
+		return sb.append("}}}").toString();
+	}
+
+	/**
+	 * The last buckets of a tier, see Rollups.toJson().
+	 *
+	 * @param tier "minute", "hour" or "day"
+	 * @param last the number of buckets
+	 */
+	@GET
+	@Path("/{tier}")
+	@Produces("application/json")
+	public Response getTier(@PathParam("tier") String tier, @QueryParam("last") @DefaultValue("24") int last) {
+		int t;
+		if (tier.equals("minute")) {
+			t = Rollups.MINUTE;
+		} else if (tier.equals("hour")) {
+			t = Rollups.HOUR;
+		} else if (tier.equals("day")) {
+			t = Rollups.DAY;
+		} else {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		Terrarium terrarium = Terrarium.getInstance();
+		return Response.ok(terrarium.getRollups().toJson(t, last, Util.now(LocalDateTime.now()), terrarium.deviceList)).build();
+	}
+}
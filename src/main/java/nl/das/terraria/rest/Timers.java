@@ -11,12 +11,14 @@ package nl.das.terraria.rest;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.Response;
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.TerrariumSnapshot;
 
 /**
  *
@@ -26,22 +28,27 @@ public class Timers {
 
 	@GET
 	@Produces("application/json")
-	public TimerArray getAllTimers() {
-		return new TimerArray(Terrarium.getInstance().getTimers());
+	public Response getAllTimers(@HeaderParam("If-None-Match") String ifNoneMatch) {
+		return ResponseCache.getObject("timers", ifNoneMatch, s -> new TimerArray(s.getTimers()));
 	}
 
 	@GET
 	@Path("/{device}")
 	@Produces("application/json")
-	public TimerArray getTimersForDevice(@PathParam("device") String device) {
-		return new TimerArray(Terrarium.getInstance().getTimersForDevice(device));
+	public Response getTimersForDevice(@PathParam("device") String device) {
+		TerrariumSnapshot s = Terrarium.getInstance().getSnapshot();
+		if (s.getDeviceIndex(device) == -1) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return Response.ok(new TimerArray(s.getTimersForDevice(device))).build();
 	}
 
 	@PUT
     @Consumes("application/json")
 	public Response saveTimers(TimerArray timers) {
-		Terrarium.getInstance().replaceTimers(timers.getTimers());
-		Terrarium.getInstance().saveSettings();
-		return Response.noContent().build();
+		return Commands.execute(() -> {
+			Terrarium.getInstance().replaceTimers(timers.getTimers());
+			Terrarium.getInstance().saveSettings();
+		});
 	}
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.rest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import jakarta.ws.rs.core.StreamingOutput;
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.trace.BinaryTrace;
+import nl.das.terraria.trace.TraceWriter;
+
+/**
+ * The response for the download of a tracefile.
+ *
+ * A text tracefile is streamed from disk and never loaded in memory.
+ * A single byte range (Range: bytes=from-to, bytes=from- or bytes=-length) is supported.
+ * A tracefile of a past day will not change anymore, so it gets a strong ETag
+ * and may be cached for a year. The tracefile of today is never cached.
+ */
+class TracefileDownload {
+
+	static final int STATUS_PARTIAL_CONTENT = 206;
+	static final int STATUS_RANGE_NOT_SATISFIABLE = 416;
+	static final String OFFSET_HEADER = "X-Trace-Offset";
+	static final int MAX_WAIT_SECONDS = 60;
+	/**
+	 * Each waiting tail request holds a worker thread, so only this many requests may wait at the same time.
+	 */
+	static final int MAX_WAITING = 8;
+
+	private static final String CACHE_FINISHED = "public, max-age=31536000, immutable";
+	private static final String CACHE_TODAY = "no-cache";
+	private static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final AtomicInteger waiting = new AtomicInteger();
+
+	private TracefileDownload() { }
+
+	/**
+	 * @param prefix      "state_" or "temp_"
+	 * @param fname       name of the tracefile as listed by History
+	 * @param range       value of the Range header or null
+	 * @param ifNoneMatch value of the If-None-Match header or null
+	 */
+	static Response build(String prefix, String fname, String range, String ifNoneMatch) {
+		if (!isTracefileName(prefix, fname)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		try {
+			Path text = Paths.get(Terrarium.traceFolder, fname);
+			Path bin = Paths.get(Terrarium.traceFolder, fname + BinaryTrace.EXTENSION);
+			Path file;
+			byte[] converted = null;
+			long size;
+			if (Files.exists(text)) {
+				file = text;
+				size = Files.size(text);
+			} else if (Files.exists(bin)) {
+				file = bin;
+				converted = BinaryTrace.toText(bin, Terrarium.getInstance().deviceList).getBytes(StandardCharsets.UTF_8);
+				size = converted.length;
+			} else {
+				return Response.status(Response.Status.NOT_FOUND).build();
+			}
+			EntityTag etag = null;
+			if (isFinished(prefix, fname)) {
+				etag = new EntityTag(fname + "-" + size + "-" + Files.getLastModifiedTime(file).toMillis());
+				if (matches(ifNoneMatch, etag)) {
+					return Response.notModified(etag).header("Cache-Control", CACHE_FINISHED).build();
+				}
+			}
+			long from = 0;
+			long to = size - 1;
+			ResponseBuilder rb;
+			if (range == null) {
+				rb = Response.ok();
+			} else {
+				long[] r = parseRange(range, size);
+				if (r == null) {
+					return Response.status(STATUS_RANGE_NOT_SATISFIABLE).header("Content-Range", "bytes */" + size).build();
+				}
+				from = r[0];
+				to = r[1];
+				rb = Response.status(STATUS_PARTIAL_CONTENT).header("Content-Range", "bytes " + from + "-" + to + "/" + size);
+			}
+			rb.entity(converted == null ? stream(file, from, to + 1) : stream(converted, from, to + 1))
+				.type("text/plain")
+				.header("Accept-Ranges", "bytes")
+				.header("Content-Length", (to + 1) - from);
+			if (etag != null) {
+				rb.tag(etag).header("Cache-Control", CACHE_FINISHED);
+			} else {
+				rb.header("Cache-Control", CACHE_TODAY);
+			}
+			return rb.build();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	/**
+	 * The part of the tracefile after offset, with the new offset in the header OFFSET_HEADER.
+	 * If there is nothing after offset, wait at most waitSeconds until new lines are written.
+	 * If offset is beyond the end of the file, the file was replaced and the whole file is returned.
+	 *
+	 * For a tracefile that exists only in the binary format the offset is the position in the binary file,
+	 * so only the records after the offset are converted to text.
+	 */
+	static Response tail(String prefix, String fname, long offset, int waitSeconds) {
+		if (!isTracefileName(prefix, fname)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		Path text = Paths.get(Terrarium.traceFolder, fname);
+		Path bin = Paths.get(Terrarium.traceFolder, fname + BinaryTrace.EXTENSION);
+		if (!Files.exists(text) && !Files.exists(bin)) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		long waitMillis = Math.min(Math.max(waitSeconds, 0), MAX_WAIT_SECONDS) * 1000L;
+		if (waitMillis == 0) {
+			return tail(text, bin, offset, 0);
+		}
+		try {
+			// Over the maximum the request returns immediately, as a poll
+			return tail(text, bin, offset, waiting.incrementAndGet() <= MAX_WAITING ? waitMillis : 0);
+		} finally {
+			waiting.decrementAndGet();
+		}
+	}
+
+	private static Response tail(Path text, Path bin, long offset, long waitMillis) {
+		try {
+			TraceWriter writer = TraceWriter.getInstance();
+			long end = System.currentTimeMillis() + waitMillis;
+			while (true) {
+				long nrOfFlushes = writer.getNrOfFlushes();
+				boolean isText = Files.exists(text);
+				long size = isText ? Files.size(text) : (Files.size(bin) / BinaryTrace.RECORD_SIZE) * BinaryTrace.RECORD_SIZE;
+				long from = offset > size ? 0 : offset;
+				long remaining = end - System.currentTimeMillis();
+				if ((from < size) || (remaining <= 0)) {
+					StreamingOutput content;
+					if (isText) {
+						content = stream(text, from, size);
+					} else {
+						long first = from / BinaryTrace.RECORD_SIZE;
+						ByteBuffer records = BinaryTrace.readFrom(bin, first);
+						// The records that are written meanwhile are included, so the offset is where they end
+						size = (first * BinaryTrace.RECORD_SIZE) + records.limit();
+						byte[] converted = BinaryTrace.toText(records, Terrarium.getInstance().deviceList).getBytes(StandardCharsets.UTF_8);
+						content = stream(converted, 0, converted.length);
+					}
+					return Response.ok(content)
+						.type("text/plain")
+						.header(OFFSET_HEADER, size)
+						.header("Cache-Control", CACHE_TODAY)
+						.build();
+				}
+				writer.awaitFlush(nrOfFlushes, remaining);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+		}
+	}
+
+	/**
+	 * @return true if fname is prefix + yyyyMMdd, so it cannot refer to a file outside the trace folder
+	 */
+	static boolean isTracefileName(String prefix, String fname) {
+		return (fname != null) && fname.startsWith(prefix) && fname.substring(prefix.length()).matches("[0-9]{8}");
+	}
+
+	/**
+	 * @return true if the tracefile is of a past day and is not written to anymore
+	 */
+	static boolean isFinished(String prefix, String fname) {
+		if (fname.equals(Terrarium.traceStateFilename) || fname.equals(Terrarium.traceTempFilename)) {
+			return false;
+		}
+		try {
+			return LocalDate.parse(fname.substring(prefix.length()), tffmt).isBefore(LocalDate.now());
+		} catch (DateTimeParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return {from, to} (inclusive) or null if the range cannot be satisfied
+	 */
+	static long[] parseRange(String range, long size) {
+		String r = range.trim();
+		if (!r.startsWith("bytes=") || r.contains(",")) {
+			return null;
+		}
+		r = r.substring("bytes=".length()).trim();
+		int dash = r.indexOf('-');
+		if (dash == -1) {
+			return null;
+		}
+		try {
+			long from;
+			long to;
+			if (dash == 0) {
+				// Last n bytes
+				long n = Long.parseLong(r.substring(1).trim());
+				if (n <= 0) {
+					return null;
+				}
+				from = Math.max(0, size - n);
+				to = size - 1;
+			} else {
+				from = Long.parseLong(r.substring(0, dash).trim());
+				String end = r.substring(dash + 1).trim();
+				to = end.isEmpty() ? size - 1 : Math.min(Long.parseLong(end), size - 1);
+			}
+			if ((from >= size) || (from > to)) {
+				return null;
+			}
+			return new long[] {from, to};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static boolean matches(String ifNoneMatch, EntityTag etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag : ifNoneMatch.split(",")) {
+			String t = tag.trim();
+			if (t.equals("*") || t.equals("\"" + etag.getValue() + "\"")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copy the bytes from - end of the file to the response with FileChannel.transferTo.
+	 */
+	private static StreamingOutput stream(Path file, long from, long end) {
+		return out -> {
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+				WritableByteChannel target = Channels.newChannel(out);
+				long pos = from;
+				while (pos < end) {
+					long n = ch.transferTo(pos, end - pos, target);
+					if (n <= 0) {
+						break;
+					}
+					pos += n;
+				}
+			}
+		};
+	}
+
+	private static StreamingOutput stream(byte[] content, long from, long end) {
+		return out -> out.write(content, (int) from, (int) (end - from));
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+
+import nl.das.terraria.Util;
+
+/**
+ * The binary tracefile format.
+ *
+ * A tracefile <name>.bin is a sequence of records of RECORD_SIZE bytes in time order (big endian):
+ *
+ * state record:       time (int, Epoch-seconds), type (byte), device (byte), state (byte), 0 (byte), end time (int)
+ * temperature record: time (int, Epoch-seconds), type (byte), 0 (byte), room, terrarium, humidity (short, tenths)
+ * start/stop record:  time (int, Epoch-seconds), type (byte), 7 x 0
+ *
+ * The device is the index of the device in the device list. The end time of a device that is switched on
+ * is in Epoch-seconds, or -1 (endless), -2 (until ideal temperature) or 0 (not known).
+ *
+ * The sparse index <name>.idx holds an entry for every INDEX_INTERVAL records:
+ * the time of the record (int) and the number of the record (int).
+ */
+public class BinaryTrace {
+
+	public static final String EXTENSION = ".bin";
+	public static final String INDEX_EXTENSION = ".idx";
+	public static final int RECORD_SIZE = 12;
+	public static final int INDEX_ENTRY_SIZE = 8;
+	public static final int INDEX_INTERVAL = 64;
+
+	public static final byte TYPE_STATE       = 0;
+	public static final byte TYPE_TEMPERATURE = 1;
+	public static final byte TYPE_START       = 2;
+	public static final byte TYPE_STOP        = 3;
+
+	public static final short NO_VALUE = Short.MIN_VALUE;
+
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static DateTimeFormatter tmfmt = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+	private BinaryTrace() { }
+
+	public static byte[] stateRecord(long time, int device, boolean on, long endtime) {
+		ByteBuffer b = ByteBuffer.allocate(RECORD_SIZE);
+		b.putInt((int) time).put(TYPE_STATE).put((byte) device).put((byte) (on ? 1 : 0)).put((byte) 0).putInt((int) endtime);
+		return b.array();
+	}
+
+	/**
+	 * @param room      temperature in tenths of degrees
+	 * @param terrarium temperature in tenths of degrees
+	 * @param humidity  in tenths of percents, or NO_VALUE
+	 */
+	public static byte[] temperatureRecord(long time, int room, int terrarium, int humidity) {
+		ByteBuffer b = ByteBuffer.allocate(RECORD_SIZE);
+		b.putInt((int) time).put(TYPE_TEMPERATURE).put((byte) 0).putShort((short) room).putShort((short) terrarium).putShort((short) humidity);
+		return b.array();
+	}
+
+	/**
+	 * @param type TYPE_START or TYPE_STOP
+	 */
+	public static byte[] markerRecord(long time, byte type) {
+		ByteBuffer b = ByteBuffer.allocate(RECORD_SIZE);
+		b.putInt((int) time).put(type);
+		return b.array();
+	}
+
+	/* Access to record i of a buffer of records */
+
+	public static long getTime(ByteBuffer b, int i) {
+		return b.getInt(i * RECORD_SIZE);
+	}
+
+	public static int getType(ByteBuffer b, int i) {
+		return b.get((i * RECORD_SIZE) + 4);
+	}
+
+	public static int getDevice(ByteBuffer b, int i) {
+		return b.get((i * RECORD_SIZE) + 5) & 0xFF;
+	}
+
+	public static boolean isOn(ByteBuffer b, int i) {
+		return b.get((i * RECORD_SIZE) + 6) == 1;
+	}
+
+	public static long getEndTime(ByteBuffer b, int i) {
+		return b.getInt((i * RECORD_SIZE) + 8);
+	}
+
+	public static int getRoom(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 6);
+	}
+
+	public static int getTerrarium(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 8);
+	}
+
+	public static int getHumidity(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 10);
+	}
+
+	public static int size(ByteBuffer b) {
+		return b.limit() / RECORD_SIZE;
+	}
+
+	/**
+	 * Read the records with from <= time <= to.
+	 * The index is used to find the first and the last record to read, so only
+	 * the records in the range and at most 2 x INDEX_INTERVAL others are read.
+	 *
+	 * @param bin the binary tracefile
+	 * @return buffer with the records, use size() and the getters to access them
+	 */
+	public static ByteBuffer read(Path bin, long from, long to) throws IOException {
+		try (FileChannel ch = FileChannel.open(bin, StandardOpenOption.READ)) {
+			long nrOfRecords = ch.size() / RECORD_SIZE;
+			long first = 0;
+			long last = nrOfRecords;
+			ByteBuffer idx = readIndex(indexOf(bin));
+			int n = idx.limit() / INDEX_ENTRY_SIZE;
+			// Start at the last entry with time < from and end at the first entry with time > to
+			int e = firstEntryAfter(idx, n, from - 1);
+			if (e > 0) {
+				first = idx.getInt(((e - 1) * INDEX_ENTRY_SIZE) + 4);
+			}
+			e = firstEntryAfter(idx, n, to);
+			if (e < n) {
+				last = Math.min(nrOfRecords, idx.getInt((e * INDEX_ENTRY_SIZE) + 4));
+			}
+			ByteBuffer b = ByteBuffer.allocate((int) (Math.max(0, last - first) * RECORD_SIZE));
+			ch.position(first * RECORD_SIZE);
+			while (b.hasRemaining() && (ch.read(b) > 0)) {
+				// Read all
+			}
+			b.flip();
+			// Skip the records outside the range
+			int start = 0;
+			int end = size(b);
+			while ((start < end) && (getTime(b, start) < from)) {
+				start++;
+			}
+			while ((end > start) && (getTime(b, end - 1) > to)) {
+				end--;
+			}
+			b.position(start * RECORD_SIZE).limit(end * RECORD_SIZE);
+			return b.slice();
+		}
+	}
+
+	/**
+	 * Read the records from record number first to the end of the file.
+	 * A record that is not completely written yet is not read.
+	 *
+	 * @param bin the binary tracefile
+	 * @return buffer with the records, use size() and the getters to access them
+	 */
+	public static ByteBuffer readFrom(Path bin, long first) throws IOException {
+		try (FileChannel ch = FileChannel.open(bin, StandardOpenOption.READ)) {
+			long nrOfRecords = ch.size() / RECORD_SIZE;
+			ByteBuffer b = ByteBuffer.allocate((int) (Math.max(0, nrOfRecords - first) * RECORD_SIZE));
+			ch.position(first * RECORD_SIZE);
+			while (b.hasRemaining() && (ch.read(b) > 0)) {
+				// Read all
+			}
+			b.flip();
+			b.limit(size(b) * RECORD_SIZE);
+			return b;
+		}
+	}
+
+	/**
+	 * Convert a binary tracefile to the text format.
+	 *
+	 * @param deviceList the device list that was used when the file was written
+	 */
+	public static String toText(Path bin, String[] deviceList) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(bin));
+		b.limit(size(b) * RECORD_SIZE);
+		return toText(b, deviceList);
+	}
+
+	/**
+	 * Convert records to the text format.
+	 *
+	 * @param b buffer with the records
+	 * @param deviceList the device list that was used when the records were written
+	 */
+	public static String toText(ByteBuffer b, String[] deviceList) {
+		StringBuilder sb = new StringBuilder(size(b) * 32);
+		for (int i = 0; i < size(b); i++) {
+			sb.append(Util.ofEpochSecond(getTime(b, i)).format(dtfmt)).append(' ');
+			switch (getType(b, i)) {
+			case TYPE_START:
+				sb.append("start");
+				break;
+			case TYPE_STOP:
+				sb.append("stop");
+				break;
+			case TYPE_TEMPERATURE:
+				// Rounded like the text trace
+				sb.append("r=").append(Math.round(getRoom(b, i) / 10.0f)).append(" t=").append(Math.round(getTerrarium(b, i) / 10.0f));
+				break;
+			default:
+				int d = getDevice(b, i);
+				sb.append(d < deviceList.length ? deviceList[d] : "device" + d);
+				if (!isOn(b, i)) {
+					sb.append(" 0");
+				} else {
+					long endtime = getEndTime(b, i);
+					sb.append(" 1");
+					if (endtime > 0) {
+						sb.append(' ').append(Util.ofEpochSecond(endtime).format(tmfmt));
+					} else if (endtime < 0) {
+						sb.append(' ').append(endtime);
+					}
+				}
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	public static Path indexOf(Path bin) {
+		String name = bin.getFileName().toString();
+		return bin.resolveSibling(name.substring(0, name.length() - EXTENSION.length()) + INDEX_EXTENSION);
+	}
+
+	/**
+	 * @return the first index entry with a time > time, or n if there is none
+	 */
+	private static int firstEntryAfter(ByteBuffer idx, int n, long time) {
+		int lo = 0;
+		int hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (idx.getInt(mid * INDEX_ENTRY_SIZE) <= time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static ByteBuffer readIndex(Path idx) throws IOException {
+		if (!Files.exists(idx)) {
+			return ByteBuffer.allocate(0);
+		}
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(idx));
+		b.limit((b.limit() / INDEX_ENTRY_SIZE) * INDEX_ENTRY_SIZE);
+		return b;
+	}
+}
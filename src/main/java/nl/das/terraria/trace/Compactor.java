@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.trace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import nl.das.terraria.Util;
+
+/**
+ * Tiered retention of the temperature history.
+ *
+ * The newest maxNrOfRawFiles temperature tracefiles are kept as they are. Older tracefiles
+ * are compacted to hourly rollups and then deleted. A tracefile rolls over 24 hours after the trace
+ * was started, so the samples of a tracefile are rolled up in the hours of their own time, which
+ * run into the next day. Hourly rollups older than hourlyRetentionDays
+ * are compacted to daily rollups, which are kept indefinitely. See TemperatureRollups.
+ *
+ * The compaction runs on its own low priority thread once every interval. To keep the SD card
+ * available for the trace writer, it sleeps after each tracefile so that on average no more than
+ * maxBytesPerSecond are read.
+ */
+public class Compactor {
+
+	public static int hourlyRetentionDays = 365;
+	public static long maxBytesPerSecond = 64 * 1024;
+	public static long intervalMillis = 3600 * 1000;
+
+	private static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private final String dir;
+	private final int maxNrOfRawFiles;
+	private Thread thread;
+
+	/**
+	 * @param dir             the trace folder
+	 * @param maxNrOfRawFiles the number of temperature tracefiles to keep
+	 */
+	public Compactor(String dir, int maxNrOfRawFiles) {
+		this.dir = dir;
+		this.maxNrOfRawFiles = maxNrOfRawFiles;
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this::run, "history-compactor");
+			this.thread.setDaemon(true);
+			this.thread.setPriority(Thread.MIN_PRIORITY);
+			this.thread.start();
+		}
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				try {
+					compact(LocalDateTime.now());
+				} catch (IOException | RuntimeException e) {
+					e.printStackTrace();
+				}
+				Thread.sleep(intervalMillis);
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * Compact the tracefiles and the hourly rollups that are beyond their retention.
+	 */
+	public void compact(LocalDateTime now) throws IOException, InterruptedException {
+		Path hourly = Paths.get(this.dir, TemperatureRollups.HOURLY);
+		List<String> files = Util.listTraceFiles(this.dir, "temp_");
+		for (int i = 0; i < (files.size() - this.maxNrOfRawFiles); i++) {
+			String name = files.get(i);
+			try {
+				LocalDate day = LocalDate.parse(name.substring("temp_".length()), tffmt);
+				long start = Util.now(day.atStartOfDay());
+				long end = Util.now(day.plusDays(2).atStartOfDay()) - 1;
+				TemperatureHistory h = new TemperatureHistory(start, end, (int) (((end + 1) - start) / 3600));
+				h.addTracefile(this.dir, day, Long.MAX_VALUE);
+				// After a crash between the append and the delete the tracefile is in the hourly rollups already.
+				// The first hour of the tracefile may be the last hour of the previous one.
+				if (lastHour(h) > TemperatureRollups.lastTime(hourly)) {
+					TemperatureRollups.append(hourly, h);
+				}
+				long size = delete(name);
+				Thread.sleep((size * 1000) / maxBytesPerSecond);
+			} catch (RuntimeException e) {
+				// A tracefile that cannot be compacted is kept and may not stop the compaction of the others
+				System.out.println("Cannot compact tracefile '" + name + "'");
+				e.printStackTrace();
+			}
+		}
+		long before = Util.now(now.toLocalDate().minusDays(hourlyRetentionDays).atStartOfDay());
+		TemperatureRollups.compactHourly(hourly, Paths.get(this.dir, TemperatureRollups.DAILY), before);
+	}
+
+	/**
+	 * @return the start of the last hour with samples, or -1 if there are none
+	 */
+	private static long lastHour(TemperatureHistory h) {
+		for (int i = h.getNrOfBuckets() - 1; i >= 0; i--) {
+			if (h.getCount(i) > 0) {
+				return h.getBucketStart(i);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Delete the tracefile in all formats.
+	 *
+	 * @return the number of bytes that were deleted
+	 */
+	private long delete(String name) throws IOException {
+		long size = 0;
+		for (String ext : new String[] {"", BinaryTrace.EXTENSION, BinaryTrace.INDEX_EXTENSION}) {
+			Path p = Paths.get(this.dir, name + ext);
+			if (Files.exists(p)) {
+				size += Files.size(p);
+				Files.delete(p);
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import nl.das.terraria.Util;
+
+/**
+ * Downsampled temperatures of a time range, read from the temperature tracefiles.
+ *
+ * The range is divided in at most the requested number of buckets of equal length and
+ * for each bucket with samples the min, max and average room and terrarium temperature are kept.
+ * Only the tracefiles of the days in the range and of the day before are read: a tracefile rolls over
+ * 24 hours after the trace was started, so it holds the first hours of the next day as well.
+ * The binary format is preferred, because its index allows to read only the records in the range.
+ * The hours without a tracefile are read from the hourly rollups, and the days without a tracefile
+ * or hourly rollups from the daily rollups (see TemperatureRollups).
+ *
+ * The temperatures are in tenths of degrees.
+ */
+public class TemperatureHistory {
+
+	public static final int MAX_POINTS = 2000;
+
+	private static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private final long from;
+	private final long step;
+	private final int[] count;
+	private final int[] roomMin;
+	private final int[] roomMax;
+	private final long[] roomSum;
+	private final int[] terrMin;
+	private final int[] terrMax;
+	private final long[] terrSum;
+	// The hours since the start of the hour of from with samples of a tracefile
+	private final long firstHour;
+	private final BitSet rawHours = new BitSet();
+
+	/**
+	 * @param from   start of the range in Epoch-seconds
+	 * @param to     end of the range in Epoch-seconds (inclusive)
+	 * @param points the maximum number of buckets (1 - MAX_POINTS)
+	 */
+	public TemperatureHistory(long from, long to, int points) {
+		int n = Math.max(1, Math.min(points, MAX_POINTS));
+		long length = Math.max(1, (to - from) + 1);
+		this.from = from;
+		this.step = ((length + n) - 1) / n;
+		int size = (int) (((length + this.step) - 1) / this.step);
+		this.count = new int[size];
+		this.roomMin = new int[size];
+		this.roomMax = new int[size];
+		this.roomSum = new long[size];
+		this.terrMin = new int[size];
+		this.terrMax = new int[size];
+		this.terrSum = new long[size];
+		this.firstHour = from - (from % 3600);
+	}
+
+	/**
+	 * Read the temperature history of the days from - to in folder, from the most detailed source of each day.
+	 */
+	public static TemperatureHistory read(String folder, long from, long to, int points) throws IOException {
+		TemperatureHistory h = new TemperatureHistory(from, to, points);
+		LocalDate last = Util.ofEpochSecond(to).toLocalDate();
+		for (LocalDate day = Util.ofEpochSecond(from).toLocalDate().minusDays(1); !day.isAfter(last); day = day.plusDays(1)) {
+			h.addTracefile(folder, day, to);
+		}
+		// Start at the start of the hour and of the day, the rollup of the first hour or day counts as well
+		long dayStart = Util.now(Util.ofEpochSecond(from).toLocalDate().atStartOfDay());
+		Set<LocalDate> hourly = h.addHourlyRollups(TemperatureRollups.read(Paths.get(folder, TemperatureRollups.HOURLY), h.firstHour, to));
+		h.addDailyRollups(TemperatureRollups.read(Paths.get(folder, TemperatureRollups.DAILY), dayStart, to), hourly);
+		return h;
+	}
+
+	/**
+	 * Add the temperature tracefile of the day, if there is one.
+	 *
+	 * @return true if there is a tracefile of the day
+	 */
+	boolean addTracefile(String folder, LocalDate day, long to) throws IOException {
+		String name = "temp_" + day.format(tffmt);
+		Path bin = Paths.get(folder, name + BinaryTrace.EXTENSION);
+		Path text = Paths.get(folder, name);
+		if (Files.exists(bin)) {
+			addBinary(bin, to);
+			return true;
+		} else if (Files.exists(text)) {
+			addText(text, to);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Add the hourly rollup records of the hours without samples of a tracefile.
+	 * Both exist only if the compaction was interrupted before the tracefile was deleted.
+	 *
+	 * @return the days of the added records
+	 */
+	private Set<LocalDate> addHourlyRollups(ByteBuffer b) {
+		Set<LocalDate> days = new HashSet<>();
+		for (int i = 0; i < TemperatureRollups.size(b); i++) {
+			long time = TemperatureRollups.getTime(b, i);
+			if (!this.rawHours.get(hour(time))) {
+				add(b, i);
+				days.add(Util.ofEpochSecond(time).toLocalDate());
+			}
+		}
+		return days;
+	}
+
+	/**
+	 * Add the daily rollup records of the days without samples of a tracefile and without hourly records.
+	 */
+	private void addDailyRollups(ByteBuffer b, Set<LocalDate> hourly) {
+		for (int i = 0; i < TemperatureRollups.size(b); i++) {
+			LocalDate day = Util.ofEpochSecond(TemperatureRollups.getTime(b, i)).toLocalDate();
+			int first = hour(Util.now(day.atStartOfDay()));
+			int next = hour(Util.now(day.plusDays(1).atStartOfDay()));
+			if (!hourly.contains(day) && ((this.rawHours.nextSetBit(first) == -1) || (this.rawHours.nextSetBit(first) >= next))) {
+				add(b, i);
+			}
+		}
+	}
+
+	private int hour(long time) {
+		return (int) Math.max(0, (time - this.firstHour) / 3600);
+	}
+
+	/**
+	 * @param room      temperature in tenths of degrees
+	 * @param terrarium temperature in tenths of degrees
+	 */
+	public void add(long time, int room, int terrarium) {
+		if (time < this.from) {
+			return;
+		}
+		long b = (time - this.from) / this.step;
+		if (b >= this.count.length) {
+			return;
+		}
+		int i = (int) b;
+		if (this.count[i] == 0) {
+			this.roomMin[i] = room;
+			this.roomMax[i] = room;
+			this.terrMin[i] = terrarium;
+			this.terrMax[i] = terrarium;
+		} else {
+			this.roomMin[i] = Math.min(this.roomMin[i], room);
+			this.roomMax[i] = Math.max(this.roomMax[i], room);
+			this.terrMin[i] = Math.min(this.terrMin[i], terrarium);
+			this.terrMax[i] = Math.max(this.terrMax[i], terrarium);
+		}
+		this.roomSum[i] += room;
+		this.terrSum[i] += terrarium;
+		this.count[i]++;
+	}
+
+	private void addRaw(long time, int room, int terrarium) {
+		if ((time >= this.from) && (time - this.from < this.count.length * this.step)) {
+			add(time, room, terrarium);
+			this.rawHours.set(hour(time));
+		}
+	}
+
+	/**
+	 * Add rollup record i of b (see TemperatureRollups) to the bucket of its time.
+	 */
+	void add(ByteBuffer b, int i) {
+		long time = Math.max(TemperatureRollups.getTime(b, i), this.from);
+		if (time - this.from >= this.count.length * this.step) {
+			return;
+		}
+		int n = TemperatureRollups.getCount(b, i);
+		int ix = (int) ((time - this.from) / this.step);
+		if (this.count[ix] == 0) {
+			this.roomMin[ix] = TemperatureRollups.getRoomMin(b, i);
+			this.roomMax[ix] = TemperatureRollups.getRoomMax(b, i);
+			this.terrMin[ix] = TemperatureRollups.getTerrariumMin(b, i);
+			this.terrMax[ix] = TemperatureRollups.getTerrariumMax(b, i);
+		} else {
+			this.roomMin[ix] = Math.min(this.roomMin[ix], TemperatureRollups.getRoomMin(b, i));
+			this.roomMax[ix] = Math.max(this.roomMax[ix], TemperatureRollups.getRoomMax(b, i));
+			this.terrMin[ix] = Math.min(this.terrMin[ix], TemperatureRollups.getTerrariumMin(b, i));
+			this.terrMax[ix] = Math.max(this.terrMax[ix], TemperatureRollups.getTerrariumMax(b, i));
+		}
+		this.roomSum[ix] += (long) TemperatureRollups.getRoomAvg(b, i) * n;
+		this.terrSum[ix] += (long) TemperatureRollups.getTerrariumAvg(b, i) * n;
+		this.count[ix] += n;
+	}
+
+	private void addBinary(Path bin, long to) throws IOException {
+		ByteBuffer b = BinaryTrace.read(bin, this.from, to);
+		for (int i = 0; i < BinaryTrace.size(b); i++) {
+			if (BinaryTrace.getType(b, i) == BinaryTrace.TYPE_TEMPERATURE) {
+				addRaw(BinaryTrace.getTime(b, i), BinaryTrace.getRoom(b, i), BinaryTrace.getTerrarium(b, i));
+			}
+		}
+	}
+
+	/**
+	 * The lines are "yyyy-MM-dd HH:mm:ss r=<room> t=<terrarium>" with the temperatures in degrees.
+	 * The date and time are parsed from the characters, the start of the day is only computed when the date changes.
+	 */
+	private void addText(Path text, long to) throws IOException {
+		try (BufferedReader rdr = Files.newBufferedReader(text, StandardCharsets.UTF_8)) {
+			String line;
+			String date = null;
+			long dayStart = 0;
+			while ((line = rdr.readLine()) != null) {
+				int r = line.indexOf(" r=", 19);
+				int t = line.indexOf(" t=", 19);
+				if ((r == -1) || (t == -1)) {
+					continue;
+				}
+				try {
+					if ((date == null) || !line.regionMatches(0, date, 0, 10)) {
+						LocalDate day = LocalDate.of((digits(line, 0) * 100) + digits(line, 2), digits(line, 5), digits(line, 8));
+						dayStart = Util.now(day.atStartOfDay());
+						date = line.substring(0, 10);
+					}
+					long time = dayStart + (digits(line, 11) * 3600L) + (digits(line, 14) * 60L) + digits(line, 17);
+					if (time > to) {
+						break;
+					}
+					addRaw(time, Integer.parseInt(line.substring(r + 3, t)) * 10, Integer.parseInt(line.substring(t + 3).trim()) * 10);
+				} catch (NumberFormatException | DateTimeException e) {
+					// Skip a damaged line
+				}
+			}
+		}
+	}
+
+	private static int digits(String s, int pos) {
+		int d1 = s.charAt(pos) - '0';
+		int d2 = s.charAt(pos + 1) - '0';
+		if ((d1 < 0) || (d1 > 9) || (d2 < 0) || (d2 > 9)) {
+			throw new NumberFormatException(s);
+		}
+		return (d1 * 10) + d2;
+	}
+
+	public long getStep() {
+		return this.step;
+	}
+
+	public long getBucketStart(int bucket) {
+		return this.from + (bucket * this.step);
+	}
+
+	public int getNrOfBuckets() {
+		return this.count.length;
+	}
+
+	public int getCount(int bucket) {
+		return this.count[bucket];
+	}
+
+	public int getRoomMin(int bucket) {
+		return this.roomMin[bucket];
+	}
+
+	public int getRoomMax(int bucket) {
+		return this.roomMax[bucket];
+	}
+
+	public int getRoomAvg(int bucket) {
+		return (int) Math.round((double) this.roomSum[bucket] / this.count[bucket]);
+	}
+
+	public int getTerrariumMin(int bucket) {
+		return this.terrMin[bucket];
+	}
+
+	public int getTerrariumMax(int bucket) {
+		return this.terrMax[bucket];
+	}
+
+	public int getTerrariumAvg(int bucket) {
+		return (int) Math.round((double) this.terrSum[bucket] / this.count[bucket]);
+	}
+
+	/**
+	 * The buckets with samples as columns:
+	 * {"from":..,"step":..,"t":[..],"room":{"min":[..],"max":[..],"avg":[..]},"terrarium":{..}}
+	 * t is the start time of the bucket in Epoch-seconds, the temperatures are in tenths of degrees.
+	 */
+	public String toJson() {
+		StringBuilder t = new StringBuilder();
+		StringBuilder[] cols = new StringBuilder[6];
+		for (int c = 0; c < cols.length; c++) {
+			cols[c] = new StringBuilder();
+		}
+		String sep = "";
+		for (int i = 0; i < this.count.length; i++) {
+			if (this.count[i] > 0) {
+				t.append(sep).append(this.from + (i * this.step));
+				cols[0].append(sep).append(getRoomMin(i));
+				cols[1].append(sep).append(getRoomMax(i));
+				cols[2].append(sep).append(getRoomAvg(i));
+				cols[3].append(sep).append(getTerrariumMin(i));
+				cols[4].append(sep).append(getTerrariumMax(i));
+				cols[5].append(sep).append(getTerrariumAvg(i));
+				sep = ",";
+			}
+		}
+		return new StringBuilder(t.length() * 4)
+			.append("{\"from\":").append(this.from).append(",\"step\":").append(this.step)
+			.append(",\"t\":[").append(t)
+			.append("],\"room\":{\"min\":[").append(cols[0]).append("],\"max\":[").append(cols[1]).append("],\"avg\":[").append(cols[2])
+			.append("]},\"terrarium\":{\"min\":[").append(cols[3]).append("],\"max\":[").append(cols[4]).append("],\"avg\":[").append(cols[5])
+			.append("]}}")
+			.toString();
+	}
+}
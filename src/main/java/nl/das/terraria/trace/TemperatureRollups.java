@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+import nl.das.terraria.Util;
+
+/**
+ * The files with the compacted temperature history.
+ *
+ * The temperature tracefiles that are older than the raw retention are compacted to one record per hour
+ * in HOURLY. The hourly records that are older than the hourly retention are compacted to one record
+ * per day in DAILY, which is kept indefinitely.
+ *
+ * A file is a sequence of records of RECORD_SIZE bytes in time order (big endian). The hour in which
+ * the trace rolled over to a new tracefile can have a record of each tracefile.
+ * time (int, Epoch-seconds of the start of the hour or day), number of samples (int),
+ * room min, max, avg, terrarium min, max, avg (short, tenths of degrees).
+ */
+public class TemperatureRollups {
+
+	public static final String HOURLY = "temp_hourly.rollup";
+	public static final String DAILY = "temp_daily.rollup";
+	public static final int RECORD_SIZE = 20;
+
+	private TemperatureRollups() { }
+
+	/**
+	 * Append the buckets with samples of h to file.
+	 */
+	public static void append(Path file, TemperatureHistory h) throws IOException {
+		try (OutputStream os = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+			write(out, h);
+		}
+	}
+
+	private static void write(DataOutputStream out, TemperatureHistory h) throws IOException {
+		for (int i = 0; i < h.getNrOfBuckets(); i++) {
+			if (h.getCount(i) > 0) {
+				out.writeInt((int) h.getBucketStart(i));
+				out.writeInt(h.getCount(i));
+				out.writeShort(h.getRoomMin(i));
+				out.writeShort(h.getRoomMax(i));
+				out.writeShort(h.getRoomAvg(i));
+				out.writeShort(h.getTerrariumMin(i));
+				out.writeShort(h.getTerrariumMax(i));
+				out.writeShort(h.getTerrariumAvg(i));
+			}
+		}
+	}
+
+	/**
+	 * @return the time of the last record, or -1 if there is none
+	 */
+	public static long lastTime(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return -1;
+		}
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			long n = ch.size() / RECORD_SIZE;
+			if (n == 0) {
+				return -1;
+			}
+			ByteBuffer b = ByteBuffer.allocate(4);
+			ch.read(b, (n - 1) * RECORD_SIZE);
+			return b.getInt(0);
+		}
+	}
+
+	/**
+	 * Read the records with from <= time <= to. The first record is found with a binary search.
+	 */
+	public static ByteBuffer read(Path file, long from, long to) throws IOException {
+		if (!Files.exists(file)) {
+			return ByteBuffer.allocate(0);
+		}
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			long n = ch.size() / RECORD_SIZE;
+			ByteBuffer t = ByteBuffer.allocate(4);
+			long lo = 0;
+			long hi = n;
+			while (lo < hi) {
+				long mid = (lo + hi) >>> 1;
+				t.clear();
+				ch.read(t, mid * RECORD_SIZE);
+				if (t.getInt(0) < from) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			ByteBuffer b = ByteBuffer.allocate((int) ((n - lo) * RECORD_SIZE));
+			ch.position(lo * RECORD_SIZE);
+			while (b.hasRemaining() && (ch.read(b) > 0)) {
+				// Read all
+			}
+			b.flip();
+			int end = size(b);
+			while ((end > 0) && (getTime(b, end - 1) > to)) {
+				end--;
+			}
+			b.limit(end * RECORD_SIZE);
+			return b;
+		}
+	}
+
+	/**
+	 * Move the hourly records with a time before 'before' to the daily file, as one record per day.
+	 * The days that are already in the daily file are skipped. The hourly file is replaced atomically.
+	 */
+	public static void compactHourly(Path hourly, Path daily, long before) throws IOException {
+		ByteBuffer old = read(hourly, 0, before - 1);
+		if (size(old) == 0) {
+			return;
+		}
+		LocalDate first = Util.ofEpochSecond(getTime(old, 0)).toLocalDate();
+		LocalDate last = Util.ofEpochSecond(getTime(old, size(old) - 1)).toLocalDate();
+		long lastDaily = lastTime(daily);
+		int nrOfDays = (int) (last.toEpochDay() - first.toEpochDay()) + 1;
+		TemperatureHistory h = new TemperatureHistory(Util.now(first.atStartOfDay()), Util.now(last.plusDays(1).atStartOfDay()) - 1, nrOfDays);
+		for (int i = 0; i < size(old); i++) {
+			if (Util.now(Util.ofEpochSecond(getTime(old, i)).toLocalDate().atStartOfDay()) > lastDaily) {
+				h.add(old, i);
+			}
+		}
+		append(daily, h);
+		// Keep the newer hourly records
+		ByteBuffer keep = read(hourly, before, Long.MAX_VALUE);
+		Path tmp = hourly.resolveSibling(hourly.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (keep.hasRemaining()) {
+				ch.write(keep);
+			}
+		}
+		Files.move(tmp, hourly, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/* Access to record i of a buffer of records */
+
+	public static long getTime(ByteBuffer b, int i) {
+		return b.getInt(i * RECORD_SIZE);
+	}
+
+	public static int getCount(ByteBuffer b, int i) {
+		return b.getInt((i * RECORD_SIZE) + 4);
+	}
+
+	public static int getRoomMin(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 8);
+	}
+
+	public static int getRoomMax(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 10);
+	}
+
+	public static int getRoomAvg(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 12);
+	}
+
+	public static int getTerrariumMin(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 14);
+	}
+
+	public static int getTerrariumMax(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 16);
+	}
+
+	public static int getTerrariumAvg(ByteBuffer b, int i) {
+		return b.getShort((i * RECORD_SIZE) + 18);
+	}
+
+	public static int size(ByteBuffer b) {
+		return b.limit() / RECORD_SIZE;
+	}
+}
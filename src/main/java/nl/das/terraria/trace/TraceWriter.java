@@ -0,0 +1,389 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import nl.das.terraria.Util;
+
+/**
+ * Writes the trace lines on its own thread, so the control loop never waits for the SD card.
+ *
+ * A trace line is put on a bounded queue with its time, format and arguments and is formatted
+ * and written by the writer thread. The writer thread keeps a buffered writer per tracefile
+ * and flushes them when the queue is empty and the flush interval has passed.
+ * When the queue is full the line is dropped and counted.
+ *
+ * A binary record (see BinaryTrace) is written the same way to a binary tracefile and its index.
+ */
+public class TraceWriter {
+
+	public static int queueCapacity = 4096;
+	public static long flushIntervalMillis = 5000;
+
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static TraceWriter instance = null;
+
+	private final int capacity;
+	private final long flushInterval;
+	private final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final Thread thread;
+	private final Object flushed = new Object();
+	private long nrOfFlushes = 0; // Guarded by flushed
+	// Only used by the writer thread
+	private final Map<String, BufferedWriter> writers = new HashMap<>();
+	private final Map<String, BinaryFile> binaries = new HashMap<>();
+	private long lastSecond = Long.MIN_VALUE;
+	private String lastTimestamp;
+	private boolean dirty = false;
+	private long lastFlush = System.nanoTime();
+
+	private static class Record {
+		final String file;
+		final LocalDateTime now;
+		final String fmt;
+		final Object[] args;
+		final byte[] data; // Not null for a binary record
+		final Runnable task; // Not null for a task that is executed on the writer thread
+
+		Record(String file, LocalDateTime now, String fmt, Object[] args, byte[] data, Runnable task) {
+			this.file = file;
+			this.now = now;
+			this.fmt = fmt;
+			this.args = args;
+			this.data = data;
+			this.task = task;
+		}
+	}
+
+	private static class BinaryFile {
+		final OutputStream data;
+		final OutputStream index;
+		long nrOfRecords;
+
+		BinaryFile(Path bin) throws IOException {
+			this.nrOfRecords = Files.exists(bin) ? Files.size(bin) / BinaryTrace.RECORD_SIZE : 0;
+			this.data = new BufferedOutputStream(Files.newOutputStream(bin, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+			this.index = new BufferedOutputStream(Files.newOutputStream(BinaryTrace.indexOf(bin), StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+		}
+	}
+
+	public TraceWriter(int capacity, long flushIntervalMillis) {
+		this.capacity = capacity;
+		this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		this.thread = new Thread(this::run, "trace-writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public static synchronized TraceWriter getInstance() {
+		if (instance == null) {
+			instance = new TraceWriter(queueCapacity, flushIntervalMillis);
+		}
+		return instance;
+	}
+
+	/**
+	 * Add a line "<now> <fmt formatted with args>" to the tracefile.
+	 *
+	 * @return false if the queue is full and the line is dropped
+	 */
+	public boolean write(String file, LocalDateTime now, String fmt, Object... args) {
+		return offer(new Record(file, now, fmt, args, null, null));
+	}
+
+	/**
+	 * Add a record to the binary tracefile.
+	 *
+	 * @param record a record of BinaryTrace.RECORD_SIZE bytes
+	 * @return false if the queue is full and the record is dropped
+	 */
+	public boolean writeRecord(String file, byte[] record) {
+		return offer(new Record(file, null, null, null, record, null));
+	}
+
+	private boolean offer(Record r) {
+		if (this.queueDepth.incrementAndGet() > this.capacity) {
+			this.queueDepth.decrementAndGet();
+			this.dropped.incrementAndGet();
+			return false;
+		}
+		this.queue.offer(r);
+		LockSupport.unpark(this.thread);
+		return true;
+	}
+
+	/**
+	 * Wait until all lines that were added before are written to the files.
+	 */
+	public void flush() {
+		request(false);
+	}
+
+	/**
+	 * Wait until all lines that were added before are written and close all files.
+	 * Must be called before a tracefile is removed or replaced.
+	 */
+	public void close() {
+		request(true);
+	}
+
+	/**
+	 * Start a new tracefile dir/prefix + day, without waiting for it.
+	 * Lines that are added after this call are written to the new file.
+	 *
+	 * On the writer thread the oldest tracefiles are removed, so at most maxNrOfFiles remain,
+	 * the new file, that was created ahead of time as a hidden file, is renamed to its name
+	 * and the hidden file for the next day is created.
+	 *
+	 * @param day        yyyyMMdd of the new tracefile
+	 * @param nextDay    yyyyMMdd of the tracefile after the new one
+	 * @param extensions the formats of the tracefile: "" for text, BinaryTrace.EXTENSION for binary
+	 */
+	public void rollOver(String dir, String prefix, String day, String nextDay, int maxNrOfFiles, String... extensions) {
+		submit(() -> {
+			closeAll();
+			try {
+				List<String> files = Util.listTraceFiles(dir, prefix);
+				for (int i = 0; (i < files.size()) && ((files.size() - i) >= maxNrOfFiles); i++) {
+					deleteTraceFile(dir, files.get(i));
+				}
+				// Hidden files of other days are left over from an earlier trace
+				try (DirectoryStream<Path> hiddenFiles = Files.newDirectoryStream(Paths.get(dir), "." + prefix + "*")) {
+					for (Path f : hiddenFiles) {
+						if (!f.getFileName().toString().startsWith("." + prefix + day)) {
+							Files.deleteIfExists(f);
+						}
+					}
+				}
+				deleteTraceFile(dir, prefix + day);
+				for (String ext : extensions) {
+					Path hidden = Paths.get(dir, "." + prefix + day + ext);
+					if (!Files.exists(hidden)) {
+						Files.createFile(hidden);
+					}
+					Files.move(hidden, Paths.get(dir, prefix + day + ext), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					Files.createFile(Paths.get(dir, "." + prefix + nextDay + ext));
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Delete the tracefile in all formats.
+	 */
+	private static void deleteTraceFile(String dir, String name) throws IOException {
+		Files.deleteIfExists(Paths.get(dir, name));
+		Files.deleteIfExists(Paths.get(dir, name + BinaryTrace.EXTENSION));
+		Files.deleteIfExists(Paths.get(dir, name + BinaryTrace.INDEX_EXTENSION));
+	}
+
+	/**
+	 * @return the number of times the files were flushed, to be used with awaitFlush()
+	 */
+	public long getNrOfFlushes() {
+		synchronized (this.flushed) {
+			return this.nrOfFlushes;
+		}
+	}
+
+	/**
+	 * Wait until the files are flushed after getNrOfFlushes() returned nrOfFlushes, or the timeout has passed.
+	 */
+	public void awaitFlush(long nrOfFlushes, long timeoutMillis) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeoutMillis;
+		synchronized (this.flushed) {
+			long remaining = timeoutMillis;
+			while ((this.nrOfFlushes == nrOfFlushes) && (remaining > 0)) {
+				this.flushed.wait(remaining);
+				remaining = end - System.currentTimeMillis();
+			}
+		}
+	}
+
+	public int getQueueDepth() {
+		return this.queueDepth.get();
+	}
+
+	public long getDroppedRecords() {
+		return this.dropped.get();
+	}
+
+	public long getWrittenRecords() {
+		return this.written.get();
+	}
+
+	/**
+	 * Execute the task on the writer thread after the lines that were added before.
+	 * A task is not counted in the queue depth, so it is never dropped.
+	 */
+	private void submit(Runnable task) {
+		this.queue.offer(new Record(null, null, null, null, null, task));
+		LockSupport.unpark(this.thread);
+	}
+
+	private void request(boolean close) {
+		CountDownLatch done = new CountDownLatch(1);
+		submit(() -> {
+			flushAll();
+			if (close) {
+				closeAll();
+			}
+			done.countDown();
+		});
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		while (true) {
+			Record r = this.queue.poll();
+			if (r == null) {
+				if (this.dirty && ((System.nanoTime() - this.lastFlush) >= this.flushInterval)) {
+					flushAll();
+				}
+				LockSupport.parkNanos(this.dirty ? this.flushInterval : TimeUnit.SECONDS.toNanos(60));
+			} else if (r.task != null) {
+				r.task.run();
+			} else {
+				this.queueDepth.decrementAndGet();
+				if (r.data != null) {
+					writeBinary(r);
+				} else {
+					writeLine(r);
+				}
+			}
+		}
+	}
+
+	private void writeLine(Record r) {
+		try {
+			BufferedWriter w = this.writers.get(r.file);
+			if (w == null) {
+				w = Files.newBufferedWriter(Paths.get(r.file), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				this.writers.put(r.file, w);
+			}
+			w.write(timestamp(r.now));
+			w.write(' ');
+			w.write(r.fmt.indexOf('%') == -1 ? r.fmt : String.format(r.fmt, r.args));
+			w.write('\n');
+			this.dirty = true;
+			this.written.incrementAndGet();
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void writeBinary(Record r) {
+		try {
+			BinaryFile f = this.binaries.get(r.file);
+			if (f == null) {
+				f = new BinaryFile(Paths.get(r.file));
+				this.binaries.put(r.file, f);
+			}
+			if ((f.nrOfRecords % BinaryTrace.INDEX_INTERVAL) == 0) {
+				// Index entry: time of the record and record number
+				f.index.write(r.data, 0, 4);
+				f.index.write(ByteBuffer.allocate(4).putInt((int) f.nrOfRecords).array());
+			}
+			f.data.write(r.data);
+			f.nrOfRecords++;
+			this.dirty = true;
+			this.written.incrementAndGet();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the formatted time, which is reused for all lines within the same second
+	 */
+	private String timestamp(LocalDateTime now) {
+		long second = (now.toLocalDate().toEpochDay() * 86400L) + now.toLocalTime().toSecondOfDay();
+		if (second != this.lastSecond) {
+			this.lastSecond = second;
+			this.lastTimestamp = now.format(dtfmt);
+		}
+		return this.lastTimestamp;
+	}
+
+	private void flushAll() {
+		for (BufferedWriter w : this.writers.values()) {
+			try {
+				w.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		for (BinaryFile f : this.binaries.values()) {
+			try {
+				f.data.flush();
+				f.index.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		this.dirty = false;
+		this.lastFlush = System.nanoTime();
+		synchronized (this.flushed) {
+			this.nrOfFlushes++;
+			this.flushed.notifyAll();
+		}
+	}
+
+	private void closeAll() {
+		for (BufferedWriter w : this.writers.values()) {
+			try {
+				w.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		this.writers.clear();
+		for (BinaryFile f : this.binaries.values()) {
+			try {
+				f.data.close();
+				f.index.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		this.binaries.clear();
+	}
+}
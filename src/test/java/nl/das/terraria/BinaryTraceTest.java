@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.trace.BinaryTrace;
+import nl.das.terraria.trace.TraceWriter;
+
+/**
+ *
+ */
+public class BinaryTraceTest {
+
+	@Test
+	public void testStateTrace() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		Path bin = dir.resolve("state_20210801.bin");
+		String[] deviceList = {"light1", "pump"};
+		TraceWriter w = new TraceWriter(1000, 60000);
+		LocalDateTime start = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(5, 0, 0));
+		long t0 = Util.now(start);
+		w.writeRecord(bin.toString(), BinaryTrace.markerRecord(t0, BinaryTrace.TYPE_START));
+		w.writeRecord(bin.toString(), BinaryTrace.stateRecord(t0, 0, true, 0));
+		w.writeRecord(bin.toString(), BinaryTrace.stateRecord(t0 + 60, 1, true, t0 + 360));
+		w.writeRecord(bin.toString(), BinaryTrace.stateRecord(t0 + 60, 0, true, -1));
+		w.writeRecord(bin.toString(), BinaryTrace.stateRecord(t0 + 360, 1, false, 0));
+		// One record per minute
+		for (int i = 6; i < 200; i++) {
+			w.writeRecord(bin.toString(), BinaryTrace.stateRecord(t0 + (i * 60), i % 2, (i % 3) == 0, -2));
+		}
+		w.writeRecord(bin.toString(), BinaryTrace.markerRecord(t0 + (200 * 60), BinaryTrace.TYPE_STOP));
+		w.close();
+		assertEquals(200 * BinaryTrace.RECORD_SIZE, Files.size(bin));
+		assertEquals(4 * BinaryTrace.INDEX_ENTRY_SIZE, Files.size(BinaryTrace.indexOf(bin)));
+
+		String[] lines = BinaryTrace.toText(bin, deviceList).split("\n");
+		assertEquals(200, lines.length);
+		assertEquals("2021-08-01 05:00:00 start", lines[0]);
+		assertEquals("2021-08-01 05:00:00 light1 1", lines[1]);
+		assertEquals("2021-08-01 05:01:00 pump 1 05:06:00", lines[2]);
+		assertEquals("2021-08-01 05:01:00 light1 1 -1", lines[3]);
+		assertEquals("2021-08-01 05:06:00 pump 0", lines[4]);
+		assertEquals("2021-08-01 08:20:00 stop", lines[199]);
+		// The tail from record 198
+		ByteBuffer tail = BinaryTrace.readFrom(bin, 198);
+		assertEquals(2, BinaryTrace.size(tail));
+		assertEquals(lines[198] + "\n" + lines[199] + "\n", BinaryTrace.toText(tail, deviceList));
+		assertEquals(0, BinaryTrace.size(BinaryTrace.readFrom(bin, 200)));
+
+		// Range of 10 minutes in the middle
+		ByteBuffer b = BinaryTrace.read(bin, t0 + (100 * 60), t0 + (109 * 60));
+		assertEquals(10, BinaryTrace.size(b));
+		assertEquals(t0 + (100 * 60), BinaryTrace.getTime(b, 0));
+		assertEquals(t0 + (109 * 60), BinaryTrace.getTime(b, 9));
+		// Ranges at both ends and outside the file
+		assertEquals(4, BinaryTrace.size(BinaryTrace.read(bin, 0, t0 + 60)));
+		assertEquals(1, BinaryTrace.size(BinaryTrace.read(bin, t0 + (200 * 60), Long.MAX_VALUE)));
+		assertEquals(0, BinaryTrace.size(BinaryTrace.read(bin, t0 + (201 * 60), Long.MAX_VALUE)));
+
+		// The binary file is listed without its extension, the index is not listed
+		Files.createFile(dir.resolve("state_20210802"));
+		List<String> files = Util.listTraceFiles(dir.toString(), "state_");
+		assertEquals(List.of("state_20210801", "state_20210802"), files);
+
+		for (Path p : Files.list(dir).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testTemperatureTrace() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		Path bin = dir.resolve("temp_20210801.bin");
+		TraceWriter w = new TraceWriter(1000, 60000);
+		long t0 = Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(5, 0, 0)));
+		w.writeRecord(bin.toString(), BinaryTrace.temperatureRecord(t0, 215, 264, 553));
+		w.writeRecord(bin.toString(), BinaryTrace.temperatureRecord(t0 + 60, 220, 265, BinaryTrace.NO_VALUE));
+		w.writeRecord(bin.toString(), BinaryTrace.temperatureRecord(t0 + 120, 217, 263, 550));
+		w.close();
+		ByteBuffer b = BinaryTrace.read(bin, t0, t0 + 60);
+		assertEquals(2, BinaryTrace.size(b));
+		assertEquals(BinaryTrace.TYPE_TEMPERATURE, BinaryTrace.getType(b, 0));
+		assertEquals(215, BinaryTrace.getRoom(b, 0));
+		assertEquals(264, BinaryTrace.getTerrarium(b, 0));
+		assertEquals(553, BinaryTrace.getHumidity(b, 0));
+		assertEquals(BinaryTrace.NO_VALUE, BinaryTrace.getHumidity(b, 1));
+		// The tenths are rounded as in the text trace
+		String[] lines = BinaryTrace.toText(bin, new String[0]).split("\n");
+		assertEquals("2021-08-01 05:00:00 r=22 t=26", lines[0]);
+		assertEquals("2021-08-01 05:01:00 r=22 t=27", lines[1]);
+		assertEquals("2021-08-01 05:02:00 r=22 t=26", lines[2]);
+		for (Path p : Files.list(dir).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.CommandQueue;
+
+/**
+ *
+ */
+public class CommandQueueTest {
+
+	@Test
+	public void testQueue() throws InterruptedException, ExecutionException {
+		AtomicInteger wakeUps = new AtomicInteger();
+		CommandQueue q = new CommandQueue(wakeUps::incrementAndGet);
+		List<Integer> executed = new ArrayList<>();
+		// Not started, so executed at once
+		CompletableFuture<Integer> f = q.submit(() -> {
+			executed.add(0);
+			return 42;
+		});
+		assertTrue(f.isDone());
+		assertEquals(42, f.get().intValue());
+		assertEquals(0, wakeUps.get());
+
+		q.start();
+		List<Thread> threads = new ArrayList<>();
+		List<CompletableFuture<Integer>> results = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int base = (t * 100) + 1;
+			Thread th = new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					final int n = base + i;
+					CompletableFuture<Integer> r = q.submit(() -> {
+						executed.add(n);
+						return n;
+					});
+					synchronized (results) {
+						results.add(r);
+					}
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th : threads) {
+			th.join();
+		}
+		// Nothing is executed until the control loop drains the queue
+		assertEquals(1, executed.size());
+		assertEquals(400, wakeUps.get());
+		for (CompletableFuture<Integer> r : results) {
+			assertFalse(r.isDone());
+		}
+		assertEquals(400, q.drain());
+		assertEquals(401, executed.size());
+		for (CompletableFuture<Integer> r : results) {
+			assertTrue(executed.contains(r.get()));
+		}
+		assertEquals(0, q.drain());
+
+		// An exception is passed to the caller
+		CompletableFuture<Void> e = q.submit((Runnable) () -> {
+			throw new IllegalArgumentException("Unknown device");
+		});
+		q.drain();
+		ExecutionException ex = assertThrows(ExecutionException.class, () -> e.get());
+		assertTrue(ex.getCause() instanceof IllegalArgumentException);
+		// An error as well
+		CompletableFuture<Void> err = q.submit((Runnable) () -> {
+			throw new AssertionError("Bug");
+		});
+		q.drain();
+		ex = assertThrows(ExecutionException.class, () -> err.get());
+		assertTrue(ex.getCause() instanceof AssertionError);
+
+		// A cancelled command is not executed, an executed command cannot be cancelled
+		CompletableFuture<Integer> cancelled = q.submit(() -> {
+			executed.add(-1);
+			return -1;
+		});
+		assertTrue(cancelled.cancel(false));
+		assertEquals(0, q.drain());
+		assertFalse(executed.contains(-1));
+		CompletableFuture<Integer> done = q.submit(() -> 1);
+		assertEquals(1, q.drain());
+		assertFalse(done.cancel(false));
+		assertEquals(1, done.get().intValue());
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.trace.BinaryTrace;
+import nl.das.terraria.trace.Compactor;
+import nl.das.terraria.trace.TemperatureHistory;
+import nl.das.terraria.trace.TemperatureRollups;
+import nl.das.terraria.trace.TraceWriter;
+
+/**
+ *
+ */
+public class CompactorTest {
+
+	@Test
+	public void testCompact() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("trace");
+		LocalDate first = LocalDate.of(2021, 8, 1);
+		// 4 days with a line every 10 minutes, the terrarium temperature is the number of the day
+		TraceWriter w = new TraceWriter(1000, 60000);
+		for (int d = 0; d < 4; d++) {
+			String file = dir.resolve("temp_" + first.plusDays(d).toString().replace("-", "")).toString();
+			for (int m = 0; m < (24 * 60); m += 10) {
+				w.write(file, first.plusDays(d).atStartOfDay().plusMinutes(m), "r=%d t=%d", 20 + (m / 60 / 12), 25 + d);
+			}
+		}
+		w.close();
+		long start = Util.now(first.atStartOfDay());
+		long end = Util.now(first.plusDays(4).atStartOfDay()) - 1;
+		String before = TemperatureHistory.read(dir.toString(), start, end, 4).toJson();
+
+		// Keep 2 raw files
+		long maxBytesPerSecond = Compactor.maxBytesPerSecond;
+		Compactor.maxBytesPerSecond = Long.MAX_VALUE / 1000;
+		Compactor c = new Compactor(dir.toString(), 2);
+		c.compact(LocalDateTime.of(first.plusDays(3), LocalTime.of(12, 0)));
+		assertEquals(List.of("temp_20210803", "temp_20210804"), Util.listTraceFiles(dir.toString(), "temp_"));
+		Path hourly = dir.resolve(TemperatureRollups.HOURLY);
+		assertEquals(48 * TemperatureRollups.RECORD_SIZE, Files.size(hourly));
+		assertEquals(before, TemperatureHistory.read(dir.toString(), start, end, 4).toJson());
+		TemperatureHistory h = TemperatureHistory.read(dir.toString(), start, end, 96);
+		assertEquals(6, h.getCount(0));
+		assertEquals(250, h.getTerrariumAvg(0));
+		assertEquals(210, h.getRoomMax(12));
+		// Compacting again changes nothing
+		c.compact(LocalDateTime.of(first.plusDays(3), LocalTime.of(13, 0)));
+		assertEquals(48 * TemperatureRollups.RECORD_SIZE, Files.size(hourly));
+
+		// Keep the hourly rollups 1 day, so the first day goes to the daily rollups
+		int hourlyRetentionDays = Compactor.hourlyRetentionDays;
+		Compactor.hourlyRetentionDays = 1;
+		c.compact(LocalDateTime.of(first.plusDays(2), LocalTime.of(12, 0)));
+		assertEquals(24 * TemperatureRollups.RECORD_SIZE, Files.size(hourly));
+		assertEquals(TemperatureRollups.RECORD_SIZE, Files.size(dir.resolve(TemperatureRollups.DAILY)));
+		assertEquals(before, TemperatureHistory.read(dir.toString(), start, end, 4).toJson());
+		h = TemperatureHistory.read(dir.toString(), start, end, 96);
+		assertEquals(144, h.getCount(0));
+		assertEquals(0, h.getCount(1));
+		assertEquals(6, h.getCount(24));
+		assertFalse(Files.exists(dir.resolve("temp_20210801")));
+		assertTrue(Files.exists(dir.resolve("temp_20210803")));
+		Compactor.hourlyRetentionDays = hourlyRetentionDays;
+		Compactor.maxBytesPerSecond = maxBytesPerSecond;
+
+		for (Path p : Files.list(dir).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testBadTracefile() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("trace");
+		LocalDate first = LocalDate.of(2021, 8, 1);
+		TraceWriter w = new TraceWriter(1000, 60000);
+		for (int d = 0; d < 3; d++) {
+			String file = dir.resolve("temp_" + first.plusDays(d).toString().replace("-", "")).toString();
+			w.write(file, first.plusDays(d).atStartOfDay(), "r=%d t=%d", 20, 25);
+		}
+		w.close();
+		// A tracefile without a date in its name is kept and the others are still compacted
+		Files.writeString(dir.resolve("temp_2021-bad"), "2021-08-01 00:00:00 r=20 t=25\n");
+		long maxBytesPerSecond = Compactor.maxBytesPerSecond;
+		Compactor.maxBytesPerSecond = Long.MAX_VALUE / 1000;
+		new Compactor(dir.toString(), 1).compact(LocalDateTime.of(first.plusDays(3), LocalTime.of(12, 0)));
+		Compactor.maxBytesPerSecond = maxBytesPerSecond;
+		assertEquals(List.of("temp_2021-bad", "temp_20210803"), Util.listTraceFiles(dir.toString(), "temp_"));
+		assertEquals(2 * TemperatureRollups.RECORD_SIZE, Files.size(dir.resolve(TemperatureRollups.HOURLY)));
+
+		for (Path p : Files.list(dir).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testAcrossMidnight() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("trace");
+		LocalDate first = LocalDate.of(2021, 8, 1);
+		// The trace was started at noon, so each tracefile runs until noon of the next day.
+		// 4 tracefiles with a line every 10 minutes, the terrarium temperature is the number of the tracefile.
+		// The second one is in the binary format.
+		TraceWriter w = new TraceWriter(1000, 60000);
+		for (int d = 0; d < 4; d++) {
+			String file = dir.resolve("temp_" + first.plusDays(d).toString().replace("-", "")).toString();
+			LocalDateTime start = first.plusDays(d).atTime(12, 0);
+			for (int m = 0; m < (24 * 60); m += 10) {
+				if (d == 1) {
+					w.writeRecord(file + BinaryTrace.EXTENSION, BinaryTrace.temperatureRecord(Util.now(start.plusMinutes(m)), 200, 250 + (d * 10),
+							BinaryTrace.NO_VALUE));
+				} else {
+					w.write(file, start.plusMinutes(m), "r=%d t=%d", 20, 25 + d);
+				}
+			}
+		}
+		w.close();
+		long start = Util.now(first.atTime(12, 0));
+		long end = Util.now(first.plusDays(4).atTime(12, 0)) - 1;
+		String before = TemperatureHistory.read(dir.toString(), start, end, 96).toJson();
+
+		long maxBytesPerSecond = Compactor.maxBytesPerSecond;
+		Compactor.maxBytesPerSecond = Long.MAX_VALUE / 1000;
+		Compactor c = new Compactor(dir.toString(), 1);
+		c.compact(LocalDateTime.of(first.plusDays(4), LocalTime.of(12, 0)));
+		assertEquals(List.of("temp_20210804"), Util.listTraceFiles(dir.toString(), "temp_"));
+		Path hourly = dir.resolve(TemperatureRollups.HOURLY);
+		assertEquals(72 * TemperatureRollups.RECORD_SIZE, Files.size(hourly));
+		assertEquals(before, TemperatureHistory.read(dir.toString(), start, end, 96).toJson());
+		// The second day: until noon from the first tracefile, then from the second
+		long day2 = Util.now(first.plusDays(1).atStartOfDay());
+		TemperatureHistory h = TemperatureHistory.read(dir.toString(), day2, (day2 + (24 * 3600)) - 1, 24);
+		for (int i = 0; i < 24; i++) {
+			assertEquals(6, h.getCount(i));
+			assertEquals(i < 12 ? 250 : 260, h.getTerrariumAvg(i));
+		}
+		// Compacting again changes nothing
+		c.compact(LocalDateTime.of(first.plusDays(4), LocalTime.of(13, 0)));
+		assertEquals(72 * TemperatureRollups.RECORD_SIZE, Files.size(hourly));
+		Compactor.maxBytesPerSecond = maxBytesPerSecond;
+
+		for (Path p : Files.list(dir).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.hw.DHT22Decoder;
+
+/**
+ * Replays pulse trains through the decoder. The timings are those of the datasheet, scaled to
+ * simulate a slow or a fast sampling loop and with random jitter as on a busy Pi.
+ */
+public class DHT22DecoderTest {
+
+	/**
+	 * @param data   the 5 bytes that are sent
+	 * @param scale  factor on all timings
+	 * @param jitter maximum jitter in nanoseconds of each edge
+	 * @return the edges as captured by DHT22.capture()
+	 */
+	static long[] waveform(byte[] data, double scale, long jitter, Random random) {
+		long[] edges = new long[DHT22Decoder.NR_OF_EDGES];
+		long t = 1_000_000L;
+		int n = 0;
+		edges[n++] = t;
+		for (long us : new long[] {30, 80, 80}) {
+			t += Math.round(us * 1000 * scale);
+			edges[n++] = t;
+		}
+		for (int i = 0; i < DHT22Decoder.NR_OF_BITS; i++) {
+			boolean one = (data[i / 8] & (0x80 >> (i % 8))) != 0;
+			t += Math.round(50_000 * scale);
+			edges[n++] = t;
+			t += Math.round((one ? 70_000 : 27_000) * scale);
+			edges[n++] = t;
+		}
+		if (jitter > 0) {
+			for (int i = 1; i < edges.length; i++) {
+				edges[i] += (long) ((random.nextDouble() - 0.5) * jitter);
+			}
+		}
+		return edges;
+	}
+
+	private static byte[] reading(int humidity, int temperature) {
+		byte[] data = new byte[5];
+		int t = Math.abs(temperature) | (temperature < 0 ? 0x8000 : 0);
+		data[0] = (byte) (humidity >> 8);
+		data[1] = (byte) humidity;
+		data[2] = (byte) (t >> 8);
+		data[3] = (byte) t;
+		data[4] = (byte) (data[0] + data[1] + data[2] + data[3]);
+		return data;
+	}
+
+	@Test
+	public void testNominal() {
+		byte[] sent = reading(652, 251);
+		byte[] data = new byte[5];
+		assertTrue(DHT22Decoder.decode(waveform(sent, 1.0, 0, null), DHT22Decoder.NR_OF_EDGES, data));
+		assertArrayEquals(sent, data);
+		assertTrue(DHT22Decoder.checkParity(data));
+		assertEquals(652, DHT22Decoder.toTenths(data[0], data[1]));
+		assertEquals(251, DHT22Decoder.toTenths(data[2], data[3]));
+	}
+
+	@Test
+	public void testJitterAndScale() {
+		Random random = new Random(19);
+		byte[] data = new byte[5];
+		for (int r = 0; r < 1000; r++) {
+			byte[] sent = reading(random.nextInt(1001), random.nextInt(1250) - 400);
+			double scale = 0.6 + random.nextDouble();
+			long[] edges = waveform(sent, scale, 10_000, random);
+			assertTrue(DHT22Decoder.decode(edges, edges.length, data));
+			assertArrayEquals(sent, data, "Run " + r + " scale " + scale);
+		}
+	}
+
+	@Test
+	public void testAllBitsEqual() {
+		byte[] data = new byte[5];
+		Random random = new Random(22);
+		for (double scale : new double[] {0.6, 1.0, 1.6}) {
+			byte[] zeros = new byte[5];
+			assertTrue(DHT22Decoder.decode(waveform(zeros, scale, 10_000, random), DHT22Decoder.NR_OF_EDGES, data));
+			assertArrayEquals(zeros, data);
+			byte[] ones = new byte[] {-1, -1, -1, -1, -1};
+			assertTrue(DHT22Decoder.decode(waveform(ones, scale, 10_000, random), DHT22Decoder.NR_OF_EDGES, data));
+			assertArrayEquals(ones, data);
+		}
+	}
+
+	@Test
+	public void testTruncated() {
+		byte[] data = new byte[5];
+		assertFalse(DHT22Decoder.decode(waveform(reading(500, 200), 1.0, 0, null), DHT22Decoder.NR_OF_EDGES - 1, data));
+		assertFalse(DHT22Decoder.decode(new long[DHT22Decoder.NR_OF_EDGES], 1, data));
+	}
+
+	@Test
+	public void testValues() {
+		byte[] data = reading(0, -101);
+		assertEquals(-101, DHT22Decoder.toTenths(data[2], data[3]));
+		assertTrue(DHT22Decoder.checkParity(data));
+		// The sum of the bytes overflows
+		data = new byte[] {(byte) 0x03, (byte) 0xE8, (byte) 0x01, (byte) 0x5F, 0};
+		data[4] = (byte) (0x03 + 0xE8 + 0x01 + 0x5F);
+		assertTrue(DHT22Decoder.checkParity(data));
+		assertEquals(1000, DHT22Decoder.toTenths(data[0], data[1]));
+		data[4]++;
+		assertFalse(DHT22Decoder.checkParity(data));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.pi4j.io.w1.W1Master;
+
+import nl.das.terraria.hw.DS18B20;
+
+/**
+ * Reads fake probes in a folder that looks like /sys/bus/w1/devices.
+ */
+public class DS18B20Test {
+
+	private static void probe(Path dir, String id, String crc, int milli) throws IOException {
+		Files.createDirectories(dir.resolve(id));
+		Files.writeString(dir.resolve(id).resolve("w1_slave"),
+				"72 01 4b 46 7f ff 0e 10 57 : crc=57 " + crc + "\n72 01 4b 46 7f ff 0e 10 57 t=" + milli + "\n");
+	}
+
+	@Test
+	public void testProbes() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("w1");
+		Files.createDirectories(dir.resolve("w1_bus_master1"));
+		probe(dir, "28-000000000002", "YES", 23125);
+		probe(dir, "28-000000000001", "YES", -1500);
+		DS18B20 ds = new DS18B20(new W1Master(dir.toString()));
+		assertEquals(-1.5, ds.getTemperature(), 0.001);
+		Map<String, Double> temps = ds.getTemperatures();
+		assertEquals(2, temps.size());
+		assertEquals(23.125, temps.get("28-000000000002"), 0.001);
+		assertEquals(1, ds.getNrOfDiscoveries());
+
+		// A failed read keeps the last value and searches the bus again, which finds the new probe
+		probe(dir, "28-000000000001", "NO", 0);
+		probe(dir, "28-000000000003", "YES", 85000);
+		assertEquals(-1.5, ds.getTemperature(), 0.001);
+		assertEquals(1, ds.getNrOfFailures());
+		assertEquals(2, ds.getNrOfDiscoveries());
+		temps = ds.getTemperatures();
+		assertEquals(3, temps.size());
+		// Not converted yet
+		assertTrue(temps.get("28-000000000003").isNaN());
+
+		// In the background all probes are read
+		probe(dir, "28-000000000001", "YES", 25000);
+		probe(dir, "28-000000000003", "YES", 26500);
+		ds.start();
+		long end = System.currentTimeMillis() + 5000;
+		while ((ds.getTemperatures().get("28-000000000003").isNaN() || (ds.getTemperature() != 25.0)) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(10);
+		}
+		assertEquals(25.0, ds.getTemperature(), 0.001);
+		assertEquals(26.5, ds.getTemperatures().get("28-000000000003"), 0.001);
+
+		// A probe that is gone is dropped
+		long intervalMillis = DS18B20.intervalMillis;
+		DS18B20.intervalMillis = 50;
+		Files.walk(dir.resolve("28-000000000003")).sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		end = System.currentTimeMillis() + 5000;
+		while ((ds.getTemperatures().size() != 2) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, ds.getTemperatures().size());
+		DS18B20.intervalMillis = intervalMillis;
+
+		// The first probe has no valid value, the second one has
+		probe(dir, "28-000000000001", "NO", 0);
+		ds = new DS18B20(new W1Master(dir.toString()));
+		assertEquals(23.125, ds.getTemperature(), 0.001);
+
+		Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.ExpiryQueue;
+
+/**
+ *
+ */
+public class ExpiryQueueTest {
+
+	@Test
+	public void testOrderAndUpdates() {
+		ExpiryQueue q = new ExpiryQueue(5);
+		assertEquals(Long.MAX_VALUE, q.peekTime());
+		q.set(0, 100);
+		q.set(1, 50);
+		q.set(2, 75);
+		q.set(3, 50);
+		assertEquals(50, q.peekTime());
+		// Nothing has expired yet
+		assertEquals(-1, q.pollExpired(49));
+		// Change the end time of device 1, so device 3 comes first
+		q.set(1, 80);
+		q.remove(2);
+		assertFalse(q.contains(2));
+		assertEquals(3, q.pollExpired(100));
+		assertEquals(1, q.pollExpired(100));
+		assertEquals(0, q.pollExpired(100));
+		assertEquals(-1, q.pollExpired(100));
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testRandomOperations() {
+		int n = 300;
+		ExpiryQueue q = new ExpiryQueue(n);
+		long[] ref = new long[n]; // 0 = not in the queue
+		Random rnd = new Random(42);
+		for (int i = 0; i < 20000; i++) {
+			int d = rnd.nextInt(n);
+			if (rnd.nextInt(4) == 0) {
+				q.remove(d);
+				ref[d] = 0;
+			} else {
+				long t = 1 + rnd.nextInt(1000);
+				q.set(d, t);
+				ref[d] = t;
+			}
+			long min = Long.MAX_VALUE;
+			for (long t : ref) {
+				if ((t != 0) && (t < min)) {
+					min = t;
+				}
+			}
+			assertEquals(min, q.peekTime());
+		}
+		// Draining returns the devices on end time, then device index
+		long prevTime = 0;
+		int prevDevice = -1;
+		int d;
+		while ((d = q.pollExpired(Long.MAX_VALUE - 1)) != -1) {
+			assertTrue((ref[d] > prevTime) || ((ref[d] == prevTime) && (d > prevDevice)));
+			prevTime = ref[d];
+			prevDevice = d;
+			ref[d] = 0;
+		}
+		for (long t : ref) {
+			assertEquals(0, t);
+		}
+	}
+}
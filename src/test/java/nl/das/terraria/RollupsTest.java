@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Rollups;
+
+/**
+ *
+ */
+public class RollupsTest {
+
+	// 1 Aug 2021 00:00:00 UTC
+	private static final long DAY = 18840L * 86400L;
+
+	@Test
+	public void testSamples() {
+		Rollups r = new Rollups(2, ZoneOffset.UTC);
+		for (int m = 0; m < 120; m++) {
+			// 2 samples per minute
+			r.addSample(DAY + (m * 60), 200 + m, 250, 500);
+			r.addSample(DAY + (m * 60) + 30, 200 + m + 1, 260, 500);
+		}
+		assertEquals(2, r.getCount(Rollups.MINUTE, DAY + 60));
+		assertEquals(201, r.getMin(Rollups.MINUTE, DAY + 60, Rollups.ROOM));
+		assertEquals(202, r.getMax(Rollups.MINUTE, DAY + 60, Rollups.ROOM));
+		assertEquals(255, r.getAvg(Rollups.MINUTE, DAY + 60, Rollups.TERRARIUM));
+		assertEquals(120, r.getCount(Rollups.HOUR, DAY + 3600));
+		assertEquals(260, r.getMin(Rollups.HOUR, DAY + 3600, Rollups.ROOM));
+		assertEquals(320, r.getMax(Rollups.HOUR, DAY + 3600, Rollups.ROOM));
+		assertEquals(240, r.getCount(Rollups.DAY, DAY + 7200));
+		assertEquals(200, r.getMin(Rollups.DAY, DAY, Rollups.ROOM));
+		assertEquals(0, r.getCount(Rollups.DAY, DAY + 86400));
+		// A minute bucket is reused after 24 hours
+		r.addSample(DAY + 86400 + 60, 100, 100, 100);
+		assertEquals(1, r.getCount(Rollups.MINUTE, DAY + 86400 + 60));
+		assertEquals(0, r.getCount(Rollups.MINUTE, DAY + 60));
+		assertEquals(240, r.getCount(Rollups.DAY, DAY));
+	}
+
+	@Test
+	public void testOnSeconds() throws IOException {
+		Rollups r = new Rollups(2, ZoneOffset.UTC);
+		// Device 0 is on from 23:30 until 01:15 the next day
+		r.deviceOn(0, (DAY + 86400) - 1800);
+		r.deviceOn(0, (DAY + 86400) - 600); // Already on
+		assertEquals(600, r.getOnSeconds(Rollups.DAY, DAY, 0, (DAY + 86400) - 1200));
+		r.deviceOff(0, DAY + 86400 + 4500);
+		assertEquals(1800, r.getOnSeconds(Rollups.DAY, DAY, 0, DAY + 86400 + 4500));
+		assertEquals(4500, r.getOnSeconds(Rollups.DAY, DAY + 86400, 0, DAY + 86400 + 4500));
+		assertEquals(1800, r.getOnSeconds(Rollups.HOUR, (DAY + 86400) - 1, 0, DAY + 86400 + 4500));
+		assertEquals(3600, r.getOnSeconds(Rollups.HOUR, DAY + 86400, 0, DAY + 86400 + 4500));
+		assertEquals(900, r.getOnSeconds(Rollups.HOUR, DAY + 86400 + 3600, 0, DAY + 86400 + 4500));
+		assertEquals(60, r.getOnSeconds(Rollups.MINUTE, DAY + 86400 + 4440, 0, DAY + 86400 + 4500));
+		assertEquals(0, r.getOnSeconds(Rollups.DAY, DAY + 86400, 1, DAY + 86400 + 4500));
+
+		// Device 1 is on, a checkpoint adds the on-time so far and the state is saved and loaded
+		r.deviceOn(1, DAY + 7200);
+		r.checkpoint(DAY + 9000);
+		Path file = Files.createTempFile("rollups", ".bin");
+		r.save(file);
+		Rollups loaded = new Rollups(2, ZoneOffset.UTC);
+		assertTrue(loaded.load(file));
+		assertEquals(1800, loaded.getOnSeconds(Rollups.DAY, DAY, 1, DAY + 9000));
+		assertEquals(4500, loaded.getOnSeconds(Rollups.DAY, DAY + 86400, 0, DAY + 86400 + 4500));
+		// Another number of devices is not loaded
+		assertTrue(!new Rollups(3, ZoneOffset.UTC).load(file));
+		Files.delete(file);
+
+		// Device 1 is still on
+		String json = r.toJson(Rollups.HOUR, 2, DAY + 86400 + 4500, new String[] {"light1", "pump"});
+		assertTrue(json.startsWith("{\"step\":3600,\"t\":[" + (DAY + 86400) + "," + (DAY + 86400 + 3600) + "],\"count\":[0,0],"));
+		assertTrue(json.endsWith(",\"on_seconds\":{\"light1\":[3600,900],\"pump\":[3600,900]}}"));
+	}
+
+	@Test
+	public void testLocalDays() {
+		// 1 Aug 2021 00:00:00 in the Netherlands is 31 Jul 22:00:00 UTC
+		long localDay = DAY - 7200;
+		Rollups r = new Rollups(2, ZoneId.of("Europe/Amsterdam"));
+		r.addSample(localDay - 1, 200, 250, 500);
+		r.addSample(localDay, 210, 250, 500);
+		r.addSample((localDay + 86400) - 1, 220, 250, 500);
+		assertEquals(2, r.getCount(Rollups.DAY, localDay));
+		assertEquals(210, r.getMin(Rollups.DAY, localDay + 3600, Rollups.ROOM));
+		assertEquals(1, r.getCount(Rollups.DAY, localDay - 1));
+		assertEquals(localDay, r.getBucketStart(Rollups.DAY, localDay + 7200));
+		// Device 0 is on from 23:30 until 00:15 local time
+		r.deviceOn(0, localDay - 1800);
+		r.deviceOff(0, localDay + 900);
+		assertEquals(1800, r.getOnSeconds(Rollups.DAY, localDay - 1, 0, localDay + 900));
+		assertEquals(900, r.getOnSeconds(Rollups.DAY, localDay, 0, localDay + 900));
+		assertTrue(r.toJson(Rollups.DAY, 1, localDay + 900, new String[] {"light1", "pump"}).startsWith("{\"step\":86400,\"t\":[" + localDay + "]"));
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.SensorAcquisition;
+import nl.das.terraria.objects.SensorSnapshot;
+import nl.das.terraria.objects.Sensors;
+
+/**
+ *
+ */
+public class SensorAcquisitionTest {
+
+	@Test
+	public void testRefresh() throws InterruptedException {
+		long intervalMillis = SensorAcquisition.intervalMillis;
+		SensorAcquisition.intervalMillis = 60000;
+		SensorAcquisition a = new SensorAcquisition(new Sensors());
+		a.start();
+		SensorSnapshot first = a.latest();
+		// A snapshot that is young enough is returned as it is
+		assertSame(first, a.get(60000));
+		Thread.sleep(20);
+		long reads = a.getNrOfReads();
+		long start = System.currentTimeMillis();
+		// Callers that ask for a refresh at the same time are served by one reading
+		List<Thread> callers = new ArrayList<>();
+		List<SensorSnapshot> results = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Thread t = new Thread(() -> {
+				SensorSnapshot s = a.get(10);
+				synchronized (results) {
+					results.add(s);
+				}
+			});
+			callers.add(t);
+			t.start();
+		}
+		for (Thread t : callers) {
+			t.join();
+		}
+		assertEquals(5, results.size());
+		for (SensorSnapshot s : results) {
+			assertTrue(s.getSampleTime() >= start);
+		}
+		assertTrue(a.getNrOfReads() - reads <= 2);
+		assertTrue(results.get(0).toJson().contains("\"sensors\":[{\"location\":\"room\""));
+		SensorAcquisition.intervalMillis = intervalMillis;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.SensorHistory;
+
+/**
+ *
+ */
+public class SensorHistoryTest {
+
+	@Test
+	public void testRingBuffer() {
+		SensorHistory h = new SensorHistory(10);
+		assertEquals(0, h.since(0).size());
+		for (int i = 0; i < 25; i++) {
+			h.add(1000 + (i * 10), 200 + i, 250 + i, 500, SensorHistory.QUALITY_OK);
+		}
+		// Only the last 10 samples are kept
+		SensorHistory.Snapshot s = h.since(0);
+		assertEquals(10, s.size());
+		assertEquals(1150, s.getTime(0));
+		assertEquals(215, s.getRoom(0));
+		assertEquals(1240, s.getTime(9));
+		assertEquals(274, s.getTerrarium(9));
+		s = h.since(1215);
+		assertEquals(3, s.size());
+		assertEquals(1220, s.getTime(0));
+		assertEquals("{\"t\":[1220,1230,1240],\"room\":[222,223,224],\"terrarium\":[272,273,274],\"humidity\":[500,500,500],\"quality\":[0,0,0]}", s.toJson());
+		assertEquals(0, h.since(1241).size());
+	}
+
+	@Test
+	public void testConcurrentReaders() throws InterruptedException {
+		SensorHistory h = new SensorHistory(64);
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 200_000; i++) {
+				h.add(i, i % 1000, (i + 1) % 1000, (i + 2) % 1000, SensorHistory.QUALITY_OK);
+			}
+		});
+		writer.start();
+		while (writer.isAlive()) {
+			SensorHistory.Snapshot s = h.since(0);
+			assertTrue(s.size() <= 64);
+			for (int k = 0; k < s.size(); k++) {
+				long t = s.getTime(k);
+				assertEquals(t % 1000, s.getRoom(k));
+				assertEquals((t + 1) % 1000, s.getTerrarium(k));
+				assertEquals((t + 2) % 1000, s.getHumidity(k));
+				if (k > 0) {
+					assertEquals(s.getTime(k - 1) + 1, t);
+				}
+			}
+		}
+		writer.join();
+		assertEquals(64, h.since(0).size());
+	}
+}
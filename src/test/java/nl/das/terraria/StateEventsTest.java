@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.StateEvents;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ *
+ */
+public class StateEventsTest {
+
+	@Test
+	public void testEvents() throws IOException, InterruptedException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.getInstance(json);
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(8, 0, 0));
+		terrarium.setNow(now);
+		terrarium.setSensors(21, 26);
+		StateEvents events = Terrarium.getEvents();
+		StateEvents.Subscriber s = events.subscribe();
+		assertNotNull(s);
+
+		// The changes of one tick give one event
+		terrarium.setDeviceOn("mist", Util.now(now) + 60);
+		terrarium.setDeviceOn("pump", -1);
+		terrarium.readSensorValues();
+		String e = s.take(5000);
+		assertNotNull(e);
+		assertTrue(e.contains("\"devices\":[{\"device\":\"pump\",\"state\":\"on\",\"end_time\":\"no endtime\""), e);
+		assertTrue(e.contains("{\"device\":\"mist\",\"state\":\"on\",\"end_time\":\"08:01:00\""), e);
+		assertTrue(e.contains("\"sensors\":{\"room\":210,\"terrarium\":260,\"humidity\":0}"), e);
+		assertFalse(e.contains("\"trace\""), e);
+		assertNull(s.take(StateEvents.coalesceMillis * 3));
+
+		terrarium.setDeviceOff("mist");
+		e = s.take(5000);
+		assertTrue(e.contains("\"devices\":[{\"device\":\"mist\",\"state\":\"off\""), e);
+		assertFalse(e.contains("pump"), e);
+		assertFalse(e.contains("\"sensors\""), e);
+
+		// A slow client loses the oldest events
+		int bufferSize = StateEvents.bufferSize;
+		long coalesceMillis = StateEvents.coalesceMillis;
+		StateEvents.bufferSize = 2;
+		StateEvents.coalesceMillis = 1;
+		for (int i = 0; i < 5; i++) {
+			terrarium.setDeviceOn("mist", -1);
+			Thread.sleep(50);
+		}
+		assertEquals(3, s.getNrOfDropped());
+		assertNotNull(s.take(0));
+		assertNotNull(s.take(0));
+		assertNull(s.take(0));
+		StateEvents.bufferSize = bufferSize;
+		StateEvents.coalesceMillis = coalesceMillis;
+
+		events.unsubscribe(s);
+		assertEquals(0, events.getNrOfSubscribers());
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.trace.BinaryTrace;
+import nl.das.terraria.trace.TemperatureHistory;
+import nl.das.terraria.trace.TraceWriter;
+
+/**
+ *
+ */
+public class TemperatureHistoryTest {
+
+	@Test
+	public void testTextAndBinary() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		long day1 = Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(0, 0, 0)));
+		long day2 = Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 2), LocalTime.of(0, 0, 0)));
+		// Day 1 in the text format: one line per minute from 23:00, the temperature rises 1 degree every 10 minutes
+		TraceWriter w = new TraceWriter(1000, 60000);
+		String text = dir.resolve("temp_20210801").toString();
+		w.write(text, Util.ofEpochSecond(day1), "start");
+		for (int m = 0; m < 60; m++) {
+			w.write(text, Util.ofEpochSecond(day1 + (23 * 3600) + (m * 60)), "r=%d t=%d", 20, 25 + (m / 10));
+		}
+		// Day 2 in the binary format
+		String bin = dir.resolve("temp_20210802.bin").toString();
+		w.writeRecord(bin, BinaryTrace.markerRecord(day2, BinaryTrace.TYPE_START));
+		for (int m = 0; m < 60; m++) {
+			w.writeRecord(bin, BinaryTrace.temperatureRecord(day2 + (m * 60), 210 + m, 250, BinaryTrace.NO_VALUE));
+		}
+		w.close();
+
+		// 2 hours in 4 buckets of 30 minutes
+		TemperatureHistory h = TemperatureHistory.read(dir.toString(), day1 + (23 * 3600), (day2 + 3600) - 1, 4);
+		assertEquals(1800, h.getStep());
+		assertEquals(4, h.getNrOfBuckets());
+		assertEquals(30, h.getCount(0));
+		assertEquals(250, h.getTerrariumMin(0));
+		assertEquals(270, h.getTerrariumMax(0));
+		assertEquals(260, h.getTerrariumAvg(0));
+		assertEquals(200, h.getRoomAvg(1));
+		assertEquals(30, h.getCount(2));
+		assertEquals(210, h.getRoomMin(2));
+		assertEquals(239, h.getRoomMax(2));
+		assertEquals(240, h.getRoomMin(3));
+
+		// Only the last 10 minutes of day 1
+		h = TemperatureHistory.read(dir.toString(), (day1 + (24 * 3600)) - 600, day2 - 1, 1);
+		assertEquals("{\"from\":" + (day2 - 600) + ",\"step\":600,\"t\":[" + (day2 - 600) + "],"
+				+ "\"room\":{\"min\":[200],\"max\":[200],\"avg\":[200]},\"terrarium\":{\"min\":[300],\"max\":[300],\"avg\":[300]}}", h.toJson());
+
+		for (Path p : Files.list(dir).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testAcrossMidnight() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		long noon1 = Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(12, 0, 0)));
+		long day2 = Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 2), LocalTime.of(0, 0, 0)));
+		// The trace was started at noon, so each tracefile runs until noon of the next day.
+		// A line every 10 minutes, the terrarium temperature is 25 in the first and 26 in the second file.
+		TraceWriter w = new TraceWriter(1000, 60000);
+		String text = dir.resolve("temp_20210801").toString();
+		String bin = dir.resolve("temp_20210802.bin").toString();
+		for (int m = 0; m < (24 * 60); m += 10) {
+			w.write(text, Util.ofEpochSecond(noon1 + (m * 60)), "r=%d t=%d", 20, 25);
+			w.writeRecord(bin, BinaryTrace.temperatureRecord(noon1 + (24 * 3600) + (m * 60), 200, 260, BinaryTrace.NO_VALUE));
+		}
+		w.close();
+
+		// Day 2 per hour: until noon from the tracefile of day 1
+		TemperatureHistory h = TemperatureHistory.read(dir.toString(), day2, (day2 + (24 * 3600)) - 1, 24);
+		for (int i = 0; i < 24; i++) {
+			assertEquals(6, h.getCount(i));
+			assertEquals(i < 12 ? 250 : 260, h.getTerrariumAvg(i));
+		}
+		// Day 1 has only the afternoon
+		h = TemperatureHistory.read(dir.toString(), day2 - (24 * 3600), day2 - 1, 24);
+		assertEquals(0, h.getCount(11));
+		assertEquals(6, h.getCount(12));
+		assertEquals(6, h.getCount(23));
+
+		for (Path p : Files.list(dir).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(dir);
+	}
+}
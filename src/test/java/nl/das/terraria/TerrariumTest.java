@@ -13,6 +13,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
@@ -35,7 +37,12 @@ import org.skyscreamer.jsonassert.JSONAssert;
 import jakarta.json.bind.Jsonb;
 import jakarta.json.bind.JsonbBuilder;
 import nl.das.terraria.Util;
+import nl.das.terraria.objects.Rollups;
+import nl.das.terraria.objects.Ruleset;
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.TerrariumSnapshot;
+import nl.das.terraria.objects.Timer;
+import nl.das.terraria.objects.TimerPlan;
 
 /**
  *
@@ -176,4 +183,214 @@ public class TerrariumTest {
 		assertEquals(terrarium.getDeviceStates()[terrarium.getDeviceIndex("mist")].getOnPeriod(), 0);
 		}
 	}
+
+	@Test
+	public void testNextDeadline() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium = Terrarium.getInstance(json);
+		assertNotNull(terrarium, "Terrarium object cannot be null");
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.initRules();
+		terrarium.setTrace(false);
+		terrarium.setSensors(21, 26); // Ideal temperature, so rules will not be activated
+		{
+		// Time: 09:05:10, ruleset 1 is active so the rules are checked every minute
+		LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(9, 5, 10));
+		terrarium.setNow(now);
+		assertEquals(Util.now(now) + 50, terrarium.getNextDeadline(now));
+		// A device that is switched on for 20 seconds comes first
+		terrarium.setDeviceOn("mist", Util.now(now) + 20);
+		assertEquals(Util.now(now) + 20, terrarium.getNextDeadline(now));
+		terrarium.setDeviceOff("mist");
+		}
+		{
+		// Without active rulesets the next timer is at 09:30 (light2 on)
+		Ruleset rs = terrarium.getRuleset(1);
+		rs.makeInactive();
+		terrarium.replaceRuleset(1, rs);
+		LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(9, 5, 10));
+		terrarium.setNow(now);
+		assertEquals(Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(9, 30, 0))), terrarium.getNextDeadline(now));
+		// At 09:40 the next whole hour comes before the next timer (light3 on at 10:00 is the same)
+		now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(9, 40, 0));
+		assertEquals(Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(10, 0, 0))), terrarium.getNextDeadline(now));
+		// At 22:20 the next timer is tomorrow, so the next whole hour is the deadline
+		now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(22, 20, 0));
+		assertEquals(Util.now(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(23, 0, 0))), terrarium.getNextDeadline(now));
+		}
+	}
+
+	@Test
+	public void testTimerPlan() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium = Terrarium.getInstance(json);
+		assertNotNull(terrarium, "Terrarium object cannot be null");
+		TimerPlan plan = terrarium.getTimerPlan();
+		// 10:15 fan_in and fan_out on, light4 on
+		assertEquals(3, plan.getEvents(615).length);
+		// pump timer 2 is not active
+		assertEquals(0, plan.getEvents(630).length);
+		// Activate pump timer 2 and add a fourth pump timer
+		terrarium.replaceTimers(new Timer[] {
+			new Timer("pump", 2, "10:30", "11:30", 1, 0),
+			new Timer("pump", 4, "12:00", "12:10", 1, 0)
+		});
+		assertEquals(24, terrarium.getTimers().length);
+		assertEquals(4, terrarium.getTimersForDevice("pump").length);
+		int[] events = plan.getEvents(630);
+		assertEquals(1, events.length);
+		assertFalse(TimerPlan.isOffEvent(events[0]));
+		assertEquals(terrarium.getDeviceIndex("pump"), plan.getDevice(TimerPlan.getTimerIndex(events[0])));
+		assertEquals(1, plan.getEvents(690).length);
+		assertTrue(TimerPlan.isOffEvent(plan.getEvents(690)[0]));
+		assertEquals(1, plan.getEvents(720).length);
+		assertEquals(23, TimerPlan.getTimerIndex(plan.getEvents(720)[0]));
+		// Deactivate it again
+		terrarium.replaceTimers(new Timer[] { new Timer("pump", 2, "10:30", "11:30", 0, 0) });
+		assertEquals(0, plan.getEvents(630).length);
+		assertEquals(0, plan.getEvents(690).length);
+	}
+
+	@Test
+	public void testDeviceRegistry() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium = Terrarium.getInstance(json);
+		assertEquals(9, terrarium.getDeviceIndex("fan_in"));
+		assertEquals(9, terrarium.getDeviceIndex("FAN_IN"));
+		assertEquals(-1, terrarium.getDeviceIndex("no device"));
+		assertEquals(-1, terrarium.getDeviceIndex("heater"));
+		assertEquals(8, terrarium.getTimersForDevice("mist")[0].getDeviceId());
+		// An unknown device is rejected and nothing is replaced
+		int nrOfTimers = terrarium.getTimers().length;
+		assertThrows(IllegalArgumentException.class, () -> terrarium.replaceTimers(new Timer[] {
+			new Timer("pump", 2, "10:30", "11:30", 1, 0),
+			new Timer("heater", 1, "12:00", "12:10", 1, 0)
+		}));
+		assertEquals(nrOfTimers, terrarium.getTimers().length);
+		assertEquals(0, terrarium.getTimerPlan().getEvents(630).length);
+		assertThrows(IllegalArgumentException.class, () -> terrarium.setDeviceOn("heater", -1L));
+		// and fails at loading the settings
+		assertThrows(IllegalArgumentException.class, () -> Terrarium.getInstance(json.replace("\"fan_in\", \"fan_out\"]", "\"fan_in\", \"heater\"]")));
+	}
+
+	@Test
+	public void testStateVersion() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium = Terrarium.getInstance(json);
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.setTrace(false);
+		LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(8, 0, 0));
+		terrarium.setNow(now);
+		long v = Terrarium.getVersion();
+		String state = terrarium.getState();
+		assertEquals(state, terrarium.getState());
+		assertEquals(v, Terrarium.getVersion());
+		terrarium.setDeviceOn("mist", Util.now(now) + 125);
+		assertTrue(Terrarium.getVersion() > v);
+		v = Terrarium.getVersion();
+		assertTrue(terrarium.getState().contains("{\"device\":\"mist\",\"state\":\"on\",\"end_time\":\"08:02:05\",\"hours_on\":0,\"manual\":\"no\"}"),
+			terrarium.getState());
+		terrarium.setDeviceManualOn("pump");
+		assertTrue(Terrarium.getVersion() > v);
+		assertTrue(terrarium.getState().contains("{\"device\":\"pump\",\"state\":\"off\",\"hours_on\":0,\"manual\":\"yes\"}"));
+		v = Terrarium.getVersion();
+		terrarium.setDeviceOn("fan_in", -2);
+		assertTrue(terrarium.getState().contains("\"end_time\":\"until ideal temperature is reached\""));
+		assertTrue(Terrarium.getVersion() > v);
+		assertTrue(terrarium.getProperties().startsWith("{\"tcu\":\"TERRARIUMPI\",\"nr_of_timers\":"));
+		assertTrue(terrarium.getState().startsWith("{\"version\":" + Terrarium.getVersion() + ",\"trace\":\"off\""));
+	}
+
+	@Test
+	public void testAwaitVersion() throws IOException, InterruptedException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium = Terrarium.getInstance(json);
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.setNow(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(8, 0, 0)));
+		long v = Terrarium.getVersion();
+		// Nothing changes
+		long start = System.currentTimeMillis();
+		assertEquals(v, Terrarium.awaitVersion(v, 100));
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		// Already changed
+		assertEquals(v, Terrarium.awaitVersion(v - 1, 10000));
+		// A change while waiting
+		Thread t = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+			}
+			terrarium.setDeviceOn("pump", -1);
+		});
+		start = System.currentTimeMillis();
+		t.start();
+		assertTrue(Terrarium.awaitVersion(v, 10000) > v);
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		t.join();
+	}
+
+	@Test
+	public void testCommandsAfterSleep() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium = Terrarium.getInstance(json);
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.setTrace(false);
+		// The last tick was at 08:00:00, after which the control loop slept until 09:30:00
+		terrarium.setNow(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(8, 0, 0)));
+		Terrarium.getCommands().start();
+		try {
+			Terrarium.getCommands().submit(() -> terrarium.setDeviceOn("pump", -1));
+			assertFalse(terrarium.isDeviceOn("pump"));
+			LocalDateTime on = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(9, 30, 0));
+			terrarium.executeCommands(on);
+			assertTrue(terrarium.isDeviceOn("pump"));
+			assertEquals(on, terrarium.getNow());
+			Terrarium.getCommands().submit(() -> terrarium.setDeviceOff("pump"));
+			LocalDateTime off = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(9, 40, 0));
+			terrarium.executeCommands(off);
+			assertFalse(terrarium.isDeviceOn("pump"));
+			// The pump was on from 09:30 until 09:40, not from 08:00
+			assertEquals(600L, terrarium.getRollups().getOnSeconds(Rollups.HOUR, Util.now(on), terrarium.getDeviceIndex("pump"), Util.now(off)));
+		} finally {
+			Terrarium.getCommands().stop();
+		}
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium = Terrarium.getInstance(json);
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.setTrace(false);
+		terrarium.setNow(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(8, 0, 0)));
+		TerrariumSnapshot s = terrarium.getSnapshot();
+		assertEquals(Terrarium.getVersion(), s.getVersion());
+		// Nothing has changed, so nothing is published
+		terrarium.publish();
+		assertSame(s, terrarium.getSnapshot());
+		String state = s.getStateJson();
+		assertFalse(s.isDeviceOn("pump"));
+		// A change does not change the published snapshot but publishes a new one
+		terrarium.setDeviceOn("pump", -1);
+		assertFalse(s.isDeviceOn("pump"));
+		assertEquals(state, s.getStateJson());
+		TerrariumSnapshot s2 = terrarium.getSnapshot();
+		assertTrue(s2.getVersion() > s.getVersion());
+		assertTrue(s2.isDeviceOn("pump"));
+		// The JSON of the published snapshot is reused
+		assertSame(s2.getStateJson(), terrarium.getState());
+		assertSame(terrarium.getProperties(), terrarium.getProperties());
+		assertEquals(-1, s2.getDeviceIndex("unknown"));
+		assertEquals(terrarium.getTimersForDevice("pump").length, s2.getTimersForDevice("pump").length);
+		assertEquals(terrarium.getRuleset(1), s2.getRuleset(1));
+	}
 }
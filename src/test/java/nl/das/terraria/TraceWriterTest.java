@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 17 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.trace.TraceWriter;
+
+/**
+ *
+ */
+public class TraceWriterTest {
+
+	@Test
+	public void testWriteAndFlush() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("trace");
+		String file = dir.resolve("state_20210801").toString();
+		TraceWriter w = new TraceWriter(100, 60000);
+		LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(5, 0, 0));
+		w.write(file, now, "start");
+		w.write(file, now.withNano(500_000_000), "%s %s", "light1", "1");
+		w.write(file, now.plusSeconds(1), "%s 1 %d", "pump", -1L);
+		w.flush();
+		assertEquals("2021-08-01 05:00:00 start\n2021-08-01 05:00:00 light1 1\n2021-08-01 05:00:01 pump 1 -1\n", Files.readString(Path.of(file)));
+		assertEquals(3, w.getWrittenRecords());
+		assertEquals(0, w.getQueueDepth());
+		assertEquals(0, w.getDroppedRecords());
+		// After a close the file can be replaced
+		w.close();
+		Files.delete(Path.of(file));
+		long nrOfFlushes = w.getNrOfFlushes();
+		w.write(file, now, "stop");
+		w.flush();
+		assertTrue(w.getNrOfFlushes() > nrOfFlushes);
+		// Returns at once after a flush, otherwise at the timeout
+		w.awaitFlush(nrOfFlushes, 60000);
+		long start = System.currentTimeMillis();
+		w.awaitFlush(w.getNrOfFlushes(), 100);
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertEquals("2021-08-01 05:00:00 stop\n", Files.readString(Path.of(file)));
+		w.close();
+		Files.delete(Path.of(file));
+		Files.delete(dir);
+	}
+}
@@ -30,6 +30,7 @@ import org.junit.jupiter.api.Test;
 
 import nl.das.terraria.Util;
 import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.trace.TraceWriter;
 
 /**
  *
@@ -89,37 +90,37 @@ public class TracefileRollOverTest {
 			LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.setTrace(true);
-			List<String> files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			List<String> files = listStateFiles();
 			assertEquals("Unexpected # of state files", 1, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 2), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = listStateFiles();
 			assertEquals("Unexpected # of state files", 2, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 3), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = listStateFiles();
 			assertEquals("Unexpected # of state files", 3, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 4), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = listStateFiles();
 			assertEquals("Unexpected # of state files", 4, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 5), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = listStateFiles();
 			assertEquals("Unexpected # of state files", 5, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 6), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = listStateFiles();
 			assertEquals("Unexpected # of state files", 5, files.size());
 			assertEquals("Unexpected filename", "state_20210802", files.get(0));
 			assertEquals("Unexpected filename", "state_20210803", files.get(1));
@@ -130,7 +131,7 @@ public class TracefileRollOverTest {
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 7), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = listStateFiles();
 			assertEquals("Unexpected # of state files", 5, files.size());
 			assertEquals("Unexpected filename", "state_20210803", files.get(0));
 			assertEquals("Unexpected filename", "state_20210804", files.get(1));
@@ -150,8 +151,16 @@ public class TracefileRollOverTest {
 		}
 	}
 
+	private List<String> listStateFiles() throws IOException {
+		// The tracefiles are created by the trace writer, so wait for it
+		TraceWriter.getInstance().flush();
+		return Util.listTraceFiles(Terrarium.traceFolder, "state_");
+	}
+
 	private String getContent(String file) {
 		String content = "<no content>";
+		// Wait until the trace writer has written all lines
+		TraceWriter.getInstance().flush();
 		try {
 			content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + file));
 		} catch (IOException e) {